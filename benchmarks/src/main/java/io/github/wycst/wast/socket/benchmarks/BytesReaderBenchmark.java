@@ -0,0 +1,145 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+import io.github.wycst.wast.socket.codec.ChannelBytesReader;
+import io.github.wycst.wast.socket.codec.ChannelDecoder;
+import io.github.wycst.wast.socket.codec.ChannelHandlerDelegation;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.util.Utils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Dispatch of a read buffer to a decoder: ChannelBytesReader (array view, a copy for direct buffers) against a ChannelDecoder on the ByteBuffer. </p>
+ * <p> Both decoders count the '\n' delimited lines of the buffer, scan is the delimiter search alone (Utils.indexOf against a byte loop). </p>
+ *
+ * @Date 2026/10/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BytesReaderBenchmark {
+
+    static final byte LF = '\n';
+
+    @Param({"256", "4096", "65536"})
+    int bufferSize;
+
+    @Param({"64"})
+    int lineLength;
+
+    ByteBuffer heap;
+    ByteBuffer direct;
+    byte[] array;
+    LineCountBytesReader bytesReader;
+    LineCountDecoder decoder;
+    CountDelegation delegation;
+
+    @Setup
+    public void setup() {
+        array = new byte[bufferSize];
+        for (int i = 0; i < bufferSize; ++i) {
+            array[i] = (i + 1) % lineLength == 0 ? LF : (byte) ('a' + i % 26);
+        }
+        heap = ByteBuffer.wrap(array);
+        direct = ByteBuffer.allocateDirect(bufferSize);
+        direct.put(array);
+        direct.flip();
+        bytesReader = new LineCountBytesReader();
+        decoder = new LineCountDecoder();
+        delegation = new CountDelegation();
+    }
+
+    @Benchmark
+    public int bytesReaderHeap() throws IOException {
+        // the reader clears the buffer, restore the read window
+        heap.limit(bufferSize).position(0);
+        bytesReader.read(null, heap, delegation);
+        return delegation.count;
+    }
+
+    @Benchmark
+    public int bytesReaderDirect() throws IOException {
+        bytesReader.read(null, direct.duplicate(), delegation);
+        return delegation.count;
+    }
+
+    @Benchmark
+    public int decoderHeap() throws IOException {
+        decoder.read(null, heap.duplicate(), delegation);
+        return delegation.count;
+    }
+
+    @Benchmark
+    public int decoderDirect() throws IOException {
+        decoder.read(null, direct.duplicate(), delegation);
+        return delegation.count;
+    }
+
+    @Benchmark
+    public int scanIndexOf() {
+        int count = 0, from = 0, index;
+        while ((index = Utils.indexOf(array, from, bufferSize, LF)) > -1) {
+            ++count;
+            from = index + 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int scanLoop() {
+        int count = 0;
+        for (int i = 0; i < bufferSize; ++i) {
+            if (array[i] == LF) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    static final class LineCountBytesReader extends ChannelBytesReader<Integer> {
+
+        @Override
+        public void read(ChannelContext channelContext, byte[] buf, int offset, int len, ChannelHandlerDelegation<Integer> delegation) {
+            int count = 0, from = offset, to = offset + len, index;
+            while ((index = Utils.indexOf(buf, from, to, LF)) > -1) {
+                ++count;
+                from = index + 1;
+            }
+            try {
+                delegation.call(count);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static final class LineCountDecoder extends ChannelDecoder<Integer> {
+
+        @Override
+        public void read(ChannelContext channelContext, ByteBuffer buf, ChannelHandlerDelegation<Integer> delegation) throws IOException {
+            int count = 0;
+            for (int i = buf.position(), limit = buf.limit(); i < limit; ++i) {
+                if (buf.get(i) == LF) {
+                    ++count;
+                }
+            }
+            buf.position(buf.limit());
+            delegation.call(count);
+        }
+    }
+
+    static final class CountDelegation implements ChannelHandlerDelegation<Integer> {
+        int count;
+
+        @Override
+        public void call(Integer count) {
+            this.count = count;
+        }
+    }
+}
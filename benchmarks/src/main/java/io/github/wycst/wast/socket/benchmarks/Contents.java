@@ -0,0 +1,34 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+/**
+ * generated message contents of the benchmarks
+ *
+ * @Date 2026/10/17
+ */
+final class Contents {
+
+    private Contents() {
+    }
+
+    /**
+     * @param content ascii, latin1 (chars 0x20..0xff) or utf8 (CJK chars)
+     * @param size    number of chars
+     * @return
+     */
+    static String text(String content, int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; ++i) {
+            if ("ascii".equals(content)) {
+                chars[i] = (char) ('a' + i % 26);
+            } else if ("latin1".equals(content)) {
+                // every other char outside ascii
+                chars[i] = (i & 1) == 0 ? (char) ('a' + i % 26) : (char) (0xc0 + i % 64);
+            } else if ("utf8".equals(content)) {
+                chars[i] = (char) (0x4e00 + i % 0x5000);
+            } else {
+                throw new IllegalArgumentException("content " + content);
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Loopback echo round trips against a TCPServer, plain and TLS (test certificate generated with keytool). </p>
+ * <p> Each benchmark thread owns one blocking client connection (-t for concurrent connections), one operation is a write of messageSize bytes
+ * and the read of the echo. </p>
+ *
+ * @Date 2026/10/17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoBenchmark {
+
+    static final char[] PASSWORD = "changeit".toCharArray();
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"plain", "tls"})
+        String transport;
+
+        TCPServer tcpServer;
+        int port;
+        SSLContext clientContext;
+        File keystore;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            port = freePort();
+            tcpServer = new TCPServer(port);
+            tcpServer.closeLogLevel();
+            if ("tls".equals(transport)) {
+                keystore = generateKeystore();
+                KeyStore keyStore = KeyStore.getInstance("JKS");
+                InputStream is = new FileInputStream(keystore);
+                try {
+                    keyStore.load(is, PASSWORD);
+                } finally {
+                    is.close();
+                }
+                KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                keyManagerFactory.init(keyStore, PASSWORD);
+                SSLContext serverContext = SSLContext.getInstance("TLS");
+                serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+                tcpServer.sslContext(serverContext);
+
+                // test certificate, trust all
+                clientContext = SSLContext.getInstance("TLS");
+                clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                    }
+
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[0];
+                    }
+                }}, null);
+            }
+            tcpServer.channelHandler(new ChannelHandler<ByteBuffer>() {
+                @Override
+                public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                    try {
+                        // the pooled read buffer itself, flushed before it is reused
+                        channelContext.write(message);
+                    } catch (IOException e) {
+                        channelContext.close();
+                    }
+                }
+            }).start();
+        }
+
+        Socket connect() throws IOException {
+            Socket socket = clientContext == null ? new Socket("127.0.0.1", port) : clientContext.getSocketFactory().createSocket("127.0.0.1", port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000);
+            return socket;
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            tcpServer.shutdown();
+            if (keystore != null) {
+                keystore.delete();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        @Param({"64", "4096"})
+        int messageSize;
+
+        Socket socket;
+        OutputStream out;
+        InputStream in;
+        byte[] message;
+        byte[] echo;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            socket = server.connect();
+            out = socket.getOutputStream();
+            in = socket.getInputStream();
+            message = new byte[messageSize];
+            for (int i = 0; i < messageSize; ++i) {
+                message[i] = (byte) ('a' + i % 26);
+            }
+            echo = new byte[messageSize];
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public byte[] roundTrip(Client client) throws IOException {
+        client.out.write(client.message);
+        client.out.flush();
+        byte[] echo = client.echo;
+        int n = 0, r;
+        while (n < echo.length) {
+            if ((r = client.in.read(echo, n, echo.length - n)) < 0) {
+                throw new EOFException("closed by the server");
+            }
+            n += r;
+        }
+        return echo;
+    }
+
+    static int freePort() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            return serverSocket.getLocalPort();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    static File generateKeystore() throws IOException, InterruptedException {
+        File keystore = File.createTempFile("wast-socket-bench", ".jks");
+        keystore.delete();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048",
+                "-validity", "30", "-storetype", "JKS", "-keystore", keystore.getPath(), "-storepass", "changeit", "-keypass", "changeit",
+                "-dname", "CN=localhost").redirectErrorStream(true).start();
+        InputStream is = process.getInputStream();
+        while (is.read() > -1) ;
+        if (process.waitFor() != 0 || !keystore.isFile()) {
+            throw new IOException("keytool failed to generate " + keystore);
+        }
+        return keystore;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Responses of 3 parts (header + body + trailer) to 8 bytes requests: writeAndFlush per part (3 syscalls per message)
+ * vs write + write + write flushed together when the handler returns (one gathering write). </p>
+ * <p> One operation is a request and the read of its response, the write syscalls per message counted by the server metrics
+ * are printed at the end of each iteration. </p>
+ * <p> The server sockets keep Nagle's algorithm on: the second and third small writes of flushEachPart wait for the (delayed) ack of the first,
+ * which dominates its round trip time. </p>
+ *
+ * @Date 2026/10/17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GatheringWriteBenchmark {
+
+    static final byte[] HEADER = "HEAD".getBytes();
+    static final byte[] TRAILER = "TAIL".getBytes();
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"flushEachPart", "gathering"})
+        String writes;
+
+        @Param({"32", "4096"})
+        int bodySize;
+
+        TCPServer tcpServer;
+        int port;
+        byte[] body;
+        long writesBegin;
+        long messagesBegin;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            port = EchoBenchmark.freePort();
+            body = new byte[bodySize];
+            final boolean flushEachPart = "flushEachPart".equals(writes);
+            tcpServer = new TCPServer(port);
+            tcpServer.closeLogLevel();
+            tcpServer.metrics(true).channelHandler(new ChannelHandler<ByteBuffer>() {
+                @Override
+                public void onHandle(ChannelContext channelContext, ByteBuffer message) throws IOException {
+                    for (int i = message.remaining() >> 3; i > 0; --i) {
+                        if (flushEachPart) {
+                            channelContext.writeAndFlush(ByteBuffer.wrap(HEADER));
+                            channelContext.writeAndFlush(ByteBuffer.wrap(body));
+                            channelContext.writeAndFlush(ByteBuffer.wrap(TRAILER));
+                        } else {
+                            channelContext.write(ByteBuffer.wrap(HEADER));
+                            channelContext.write(ByteBuffer.wrap(body));
+                            channelContext.write(ByteBuffer.wrap(TRAILER));
+                        }
+                    }
+                }
+            }).start();
+        }
+
+        @Setup(Level.Iteration)
+        public void mark() {
+            writesBegin = tcpServer.metrics().getWrites();
+            messagesBegin = tcpServer.metrics().getBytesRead() >> 3;
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            long messages = (tcpServer.metrics().getBytesRead() >> 3) - messagesBegin;
+            if (messages > 0) {
+                System.out.printf(" [%.3f write syscalls per message]", (double) (tcpServer.metrics().getWrites() - writesBegin) / messages);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            tcpServer.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        Socket socket;
+        OutputStream out;
+        InputStream in;
+        byte[] request = new byte[8];
+        byte[] response;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            socket = new Socket("127.0.0.1", server.port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000);
+            out = socket.getOutputStream();
+            in = socket.getInputStream();
+            response = new byte[HEADER.length + server.bodySize + TRAILER.length];
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public byte[] requestResponse(Client client) throws IOException {
+        client.out.write(client.request);
+        byte[] response = client.response;
+        int n = 0, r;
+        while (n < response.length) {
+            if ((r = client.in.read(response, n, response.length - n)) < 0) {
+                throw new EOFException("closed by the server");
+            }
+            n += r;
+        }
+        return response;
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+import io.github.wycst.wast.socket.env.RuntimeAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> RuntimeAdapter.getStringBytes (the internal value of a compact string on JDK9+) against String.getBytes. </p>
+ *
+ * @Date 2026/10/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringBytesBenchmark {
+
+    @Param({"ascii", "latin1", "utf8"})
+    String content;
+
+    @Param({"16", "1000", "10000"})
+    int size;
+
+    @Param({"UTF-8", "ISO-8859-1"})
+    String charsetName;
+
+    String message;
+    Charset charset;
+
+    @Setup
+    public void setup() {
+        message = Contents.text(content, size);
+        charset = Charset.forName(charsetName);
+    }
+
+    @Benchmark
+    public byte[] runtimeAdapter() {
+        return RuntimeAdapter.INSTANCE.getStringBytes(message, charset);
+    }
+
+    @Benchmark
+    public byte[] stringGetBytes() {
+        return message.getBytes(charset);
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.wycst.wast.socket.benchmarks;
+
+import io.github.wycst.wast.socket.codec.ChannelHandlerDelegation;
+import io.github.wycst.wast.socket.codec.ChannelStringCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> ChannelStringCodec encode (write) and decode (read) of one message. </p>
+ * <p> content: ascii (compact string, 1 byte per char), latin1 (compact string with chars >= 0x80, 2 bytes per char in UTF-8),
+ * utf8 (chinese, utf16 string, 3 bytes per char in UTF-8); size is the number of chars. </p>
+ * <p> The read frames are built with the length header the decoder expects (1 byte under 128, otherwise 4 bytes big endian with the first bit set),
+ * the decoder keeps the low 15 bits of the length so the largest frame stays under 32K bytes (10000 utf8 chars). </p>
+ *
+ * @Date 2026/10/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringCodecBenchmark {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"ascii", "latin1", "utf8"})
+    String content;
+
+    @Param({"16", "100", "1000", "10000"})
+    int size;
+
+    ChannelStringCodec codec;
+    String message;
+    ByteBuffer heapFrame;
+    ByteBuffer directFrame;
+    BlackholeDelegation delegation;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        codec = new ChannelStringCodec(UTF_8);
+        message = Contents.text(content, size);
+        byte[] bytes = message.getBytes(UTF_8);
+        heapFrame = frame(bytes);
+        directFrame = ByteBuffer.allocateDirect(heapFrame.remaining());
+        directFrame.put(heapFrame.duplicate());
+        directFrame.flip();
+        delegation = new BlackholeDelegation(blackhole);
+    }
+
+    static ByteBuffer frame(byte[] bytes) {
+        int len = bytes.length;
+        ByteBuffer buf = ByteBuffer.allocate(len + 4);
+        if (len < 0x80) {
+            buf.put((byte) len);
+        } else {
+            buf.putInt(len | 0x80000000);
+        }
+        buf.put(bytes);
+        buf.flip();
+        return buf;
+    }
+
+    @Benchmark
+    public ByteBuffer write() throws IOException {
+        return codec.write(message);
+    }
+
+    @Benchmark
+    public void readHeap() throws IOException {
+        codec.read(null, heapFrame.duplicate(), delegation);
+    }
+
+    @Benchmark
+    public void readDirect() throws IOException {
+        codec.read(null, directFrame.duplicate(), delegation);
+    }
+
+    static final class BlackholeDelegation implements ChannelHandlerDelegation<String> {
+        final Blackhole blackhole;
+
+        BlackholeDelegation(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void call(String message) {
+            blackhole.consume(message);
+        }
+    }
+}
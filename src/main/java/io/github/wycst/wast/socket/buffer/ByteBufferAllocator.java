@@ -0,0 +1,54 @@
+package io.github.wycst.wast.socket.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Allocator of the short-lived buffers used by the read path. </p>
+ * <p> A buffer obtained by {@link #allocate(int)} is cleared with a limit of the requested capacity (the real capacity may be larger),
+ * and must be returned by {@link #release(ByteBuffer)} once nobody references it any more. </p>
+ *
+ * @Date 2026/10/17
+ */
+public interface ByteBufferAllocator {
+
+    /**
+     * allocate a new heap buffer on every call, release does nothing
+     */
+    ByteBufferAllocator UNPOOLED = new ByteBufferAllocator() {
+        @Override
+        public ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        @Override
+        public void release(ByteBuffer buf) {
+        }
+
+        @Override
+        public boolean isDirect() {
+            return false;
+        }
+    };
+
+    /**
+     * allocate a buffer which remaining is capacity
+     *
+     * @param capacity min capacity
+     * @return buffer (position 0, limit capacity)
+     */
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * give back the buffer, the buffer must not be used after release
+     *
+     * @param buf
+     */
+    void release(ByteBuffer buf);
+
+    /**
+     * Whether the allocated buffers are direct (no backing array)
+     *
+     * @return
+     */
+    boolean isDirect();
+}
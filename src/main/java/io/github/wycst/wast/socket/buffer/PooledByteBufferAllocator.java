@@ -0,0 +1,126 @@
+package io.github.wycst.wast.socket.buffer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Pooled allocator with thread-local arenas, no lock and no CAS on the allocate/release path. </p>
+ * <p> Capacities are rounded up to a size class (power of two from 512 bytes to maxCapacity),
+ * each arena caches at most maxCachedPerClass buffers of every class, requests larger than maxCapacity are not pooled. </p>
+ * <p> A buffer released by a thread other than the allocating one goes to the arena of the releasing thread. </p>
+ *
+ * @Date 2026/10/17
+ */
+public final class PooledByteBufferAllocator implements ByteBufferAllocator {
+
+    public static final PooledByteBufferAllocator DEFAULT = new PooledByteBufferAllocator(false);
+    public static final PooledByteBufferAllocator DEFAULT_DIRECT = new PooledByteBufferAllocator(true);
+
+    static final int MIN_CAPACITY_SHIFT = 9;
+    static final int MIN_CAPACITY = 1 << MIN_CAPACITY_SHIFT;
+
+    final boolean direct;
+    final int maxCapacity;
+    final int maxCachedPerClass;
+    final int sizeClassCount;
+
+    final ThreadLocal<Arena> arenas = new ThreadLocal<Arena>() {
+        @Override
+        protected Arena initialValue() {
+            return new Arena(sizeClassCount, maxCachedPerClass);
+        }
+    };
+
+    public PooledByteBufferAllocator(boolean direct) {
+        this(direct, 64 << 10, 32);
+    }
+
+    /**
+     * @param direct            use direct buffers
+     * @param maxCapacity       max pooled capacity (rounded up to a power of two)
+     * @param maxCachedPerClass max cached buffers per size class and thread
+     */
+    public PooledByteBufferAllocator(boolean direct, int maxCapacity, int maxCachedPerClass) {
+        this.direct = direct;
+        this.maxCapacity = Math.max(sizeClassCapacity(sizeClassIndex(maxCapacity)), MIN_CAPACITY);
+        this.maxCachedPerClass = Math.max(maxCachedPerClass, 1);
+        this.sizeClassCount = sizeClassIndex(this.maxCapacity) + 1;
+    }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        if (capacity > maxCapacity) {
+            return newBuffer(capacity);
+        }
+        int index = sizeClassIndex(capacity);
+        ByteBuffer buf = arenas.get().poll(index);
+        if (buf == null) {
+            buf = newBuffer(sizeClassCapacity(index));
+        }
+        // Buffer cast: ByteBuffer covariant overrides do not exist on JDK8
+        ((Buffer) buf).limit(capacity);
+        return buf;
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        if (buf == null || buf.isDirect() != direct || buf.isReadOnly()) return;
+        int capacity = buf.capacity();
+        if (capacity > maxCapacity || capacity < MIN_CAPACITY || (capacity & (capacity - 1)) != 0) {
+            // not allocated by this allocator (or sliced)
+            return;
+        }
+        ((Buffer) buf).clear();
+        arenas.get().offer(sizeClassIndex(capacity), buf);
+    }
+
+    @Override
+    public boolean isDirect() {
+        return direct;
+    }
+
+    ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    static int sizeClassIndex(int capacity) {
+        if (capacity <= MIN_CAPACITY) return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CAPACITY_SHIFT;
+    }
+
+    static int sizeClassCapacity(int index) {
+        return MIN_CAPACITY << index;
+    }
+
+    /**
+     * per thread stacks of free buffers
+     */
+    static final class Arena {
+        final ByteBuffer[][] stacks;
+        final int[] sizes;
+
+        Arena(int sizeClassCount, int maxCachedPerClass) {
+            this.stacks = new ByteBuffer[sizeClassCount][maxCachedPerClass];
+            this.sizes = new int[sizeClassCount];
+        }
+
+        ByteBuffer poll(int index) {
+            int size = sizes[index];
+            if (size == 0) return null;
+            ByteBuffer[] stack = stacks[index];
+            ByteBuffer buf = stack[--size];
+            stack[size] = null;
+            sizes[index] = size;
+            return buf;
+        }
+
+        void offer(int index, ByteBuffer buf) {
+            int size = sizes[index];
+            ByteBuffer[] stack = stacks[index];
+            if (size < stack.length) {
+                stack[size] = buf;
+                sizes[index] = size + 1;
+            }
+        }
+    }
+}
@@ -30,6 +30,13 @@ public abstract class ChannelBytesReader<E> extends ChannelDecoder<E> {
     public final void read(ChannelContext channelContext, ByteBuffer buf, ChannelHandlerDelegation<E> delegation) {
         // buf.arrayOffset();
         int len = buf.remaining();
+        if (!buf.hasArray()) {
+            // direct buffer, copied into the scratch array of the connection
+            byte[] bytes = channelContext.readScratch(len);
+            buf.get(bytes, 0, len);
+            read(channelContext, bytes, 0, len, delegation);
+            return;
+        }
         int offset = buf.position();
         buf.clear();
         read(channelContext, buf.array(), offset, len, delegation);
@@ -0,0 +1,171 @@
+package io.github.wycst.wast.socket.codec;
+
+import io.github.wycst.wast.socket.exception.SocketException;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.util.Utils;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p> Delimiter-terminated framing (lines, or any single or multi-byte delimiter). </p>
+ * <p> The first delimiter byte is searched 8 bytes at a time (Utils.indexOf), then the other delimiter bytes are compared. </p>
+ * <p> Frames are delivered as ByteBuffer views (ByteBuffer.wrap) of the read array between position and limit, without copying,
+ * only the tail of an incomplete frame is kept in a per-connection cumulation (ChannelContext.decoderState).
+ * A frame is only valid during the ChannelHandler call (copy it to keep it). </p>
+ * <p> Stateless, one instance can be shared by all channels. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ChannelDelimiterCodec extends ChannelBytesReader<ByteBuffer> implements ChannelWriter<ByteBuffer> {
+
+    static final int MIN_CUMULATION_CAPACITY = 256;
+
+    final byte[] delimiter;
+    final int maxFrameLength;
+    final boolean stripDelimiter;
+
+    /**
+     * delimiter stripped, no frame limit
+     *
+     * @param delimiter
+     */
+    public ChannelDelimiterCodec(String delimiter) {
+        this(delimiter.getBytes(Charset.forName("UTF-8")), Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * @param delimiter      one or more bytes
+     * @param maxFrameLength max frame length (delimiter excluded), a longer frame fails as soon as maxFrameLength bytes are read without delimiter
+     * @param stripDelimiter whether the delimiter is removed from the delivered frame
+     */
+    public ChannelDelimiterCodec(byte[] delimiter, int maxFrameLength, boolean stripDelimiter) {
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("empty delimiter");
+        }
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be greater than 0: " + maxFrameLength);
+        }
+        this.delimiter = delimiter.clone();
+        this.maxFrameLength = maxFrameLength;
+        this.stripDelimiter = stripDelimiter;
+    }
+
+    @Override
+    public final void read(ChannelContext channelContext, byte[] buf, int offset, int len, ChannelHandlerDelegation<ByteBuffer> delegation) {
+        // cumulation is kept in write mode between two reads
+        ByteBuffer cumulation = (ByteBuffer) channelContext.decoderState();
+        byte[] array;
+        int start, end, scanFrom;
+        if (cumulation == null) {
+            array = buf;
+            start = scanFrom = offset;
+            end = offset + len;
+        } else {
+            int cumulated = cumulation.position();
+            cumulation = ensureWritable(cumulation, len);
+            cumulation.put(buf, offset, len);
+            array = cumulation.array();
+            start = cumulation.arrayOffset();
+            end = start + cumulation.position();
+            // the cumulated bytes are already scanned, except a possible delimiter prefix at the end
+            scanFrom = start + Math.max(cumulated - delimiter.length + 1, 0);
+        }
+        try {
+            int from = start;
+            int index;
+            while ((index = indexOfDelimiter(array, scanFrom, end)) > -1) {
+                int frameLength = index - from;
+                if (frameLength > maxFrameLength) {
+                    throw new SocketException("frame length " + frameLength + " exceeds max limit " + maxFrameLength);
+                }
+                delegation.call(ByteBuffer.wrap(array, from, stripDelimiter ? frameLength : frameLength + delimiter.length));
+                from = scanFrom = index + delimiter.length;
+            }
+            int remaining = end - from;
+            if (remaining - delimiter.length + 1 > maxFrameLength) {
+                // fail fast, do not cumulate a frame which will never be delivered
+                throw new SocketException("frame length exceeds max limit " + maxFrameLength);
+            }
+            if (remaining == 0) {
+                channelContext.decoderState(null);
+            } else if (cumulation != null) {
+                System.arraycopy(array, from, array, start, remaining);
+                ((Buffer) cumulation).position(remaining);
+                channelContext.decoderState(cumulation);
+            } else {
+                // the read buffer is released after the read, keep a copy of the incomplete frame
+                cumulation = ByteBuffer.allocate(Math.max(remaining, MIN_CUMULATION_CAPACITY));
+                cumulation.put(array, from, remaining);
+                channelContext.decoderState(cumulation);
+            }
+        } catch (IOException e) {
+            channelContext.decoderState(null);
+            throw new SocketException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            channelContext.decoderState(null);
+            throw e;
+        }
+    }
+
+    /**
+     * index of the first complete delimiter in array[from, to)
+     */
+    final int indexOfDelimiter(byte[] array, int from, int to) {
+        byte first = delimiter[0];
+        int dlen = delimiter.length;
+        int last = to - dlen;
+        while (from <= last) {
+            int index = Utils.indexOf(array, from, last + 1, first);
+            if (index == -1) {
+                return -1;
+            }
+            int i = 1;
+            while (i < dlen && array[index + i] == delimiter[i]) {
+                ++i;
+            }
+            if (i == dlen) {
+                return index;
+            }
+            from = index + 1;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer ensureWritable(ByteBuffer cumulation, int len) {
+        if (cumulation.remaining() >= len) {
+            return cumulation;
+        }
+        int required = cumulation.position() + len;
+        int capacity = cumulation.capacity() << 1;
+        while (capacity < required && capacity > 0) {
+            capacity <<= 1;
+        }
+        ByteBuffer newCumulation = ByteBuffer.allocate(capacity > 0 ? capacity : required);
+        ((Buffer) cumulation).flip();
+        newCumulation.put(cumulation);
+        return newCumulation;
+    }
+
+    /**
+     * frame -> frame + delimiter (the frame is copied, its position is not moved)
+     *
+     * @param frame
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public ByteBuffer write(ByteBuffer frame) throws IOException {
+        int len = frame.remaining();
+        if (len > maxFrameLength) {
+            throw new SocketException("frame length " + len + " exceeds max limit " + maxFrameLength);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(len + delimiter.length);
+        buf.put(frame.duplicate());
+        buf.put(delimiter);
+        ((Buffer) buf).flip();
+        return buf;
+    }
+}
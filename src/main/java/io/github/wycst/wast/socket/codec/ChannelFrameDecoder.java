@@ -0,0 +1,100 @@
+package io.github.wycst.wast.socket.codec;
+
+import io.github.wycst.wast.socket.exception.SocketException;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Incremental (non-blocking) decoder: never waits for the rest of a frame. </p>
+ * <p> Subclasses implement decode() which returns null when the frame is incomplete, the unconsumed bytes are then kept
+ * in a per-connection cumulation buffer (ChannelContext.decoderState) and decoding resumes on the next readiness event,
+ * so a half-sent frame costs no thread (suitable for all RunModes, required for EVENT_LOOP). </p>
+ * <p> When no bytes are pending, decode() works directly on the read buffer (no copy),
+ * frames that are slices of the input are only valid during the ChannelHandler call. </p>
+ *
+ * @Date 2026/10/17
+ */
+public abstract class ChannelFrameDecoder<T> extends ChannelDecoder<T> {
+
+    static final int MIN_CUMULATION_CAPACITY = 256;
+
+    /**
+     * <p> Decode one frame starting at in.position() and move the position after it. </p>
+     * <p> Return null if the frame is incomplete (the position is restored by the caller). </p>
+     *
+     * @param channelContext
+     * @param in             readable bytes
+     * @return frame or null if incomplete
+     * @throws IOException
+     */
+    protected abstract T decode(ChannelContext channelContext, ByteBuffer in) throws IOException;
+
+    @Override
+    public final void read(ChannelContext channelContext, ByteBuffer buf, ChannelHandlerDelegation<T> delegation) throws IOException {
+        // cumulation is kept in write mode between two reads
+        ByteBuffer cumulation = (ByteBuffer) channelContext.decoderState();
+        ByteBuffer in;
+        if (cumulation == null) {
+            in = buf;
+        } else {
+            cumulation = ensureWritable(cumulation, buf.remaining());
+            cumulation.put(buf);
+            ((Buffer) cumulation).flip();
+            in = cumulation;
+        }
+        try {
+            decodeFrames(channelContext, in, delegation);
+        } catch (IOException e) {
+            channelContext.decoderState(null);
+            throw e;
+        } catch (RuntimeException e) {
+            channelContext.decoderState(null);
+            throw e;
+        }
+        if (!in.hasRemaining()) {
+            channelContext.decoderState(null);
+            return;
+        }
+        if (in == cumulation) {
+            cumulation.compact();
+        } else {
+            // the read buffer is released after the read, keep a copy of the incomplete frame
+            cumulation = ByteBuffer.allocate(Math.max(in.remaining(), MIN_CUMULATION_CAPACITY));
+            cumulation.put(in);
+        }
+        channelContext.decoderState(cumulation);
+    }
+
+    private void decodeFrames(ChannelContext channelContext, ByteBuffer in, ChannelHandlerDelegation<T> delegation) throws IOException {
+        while (in.hasRemaining()) {
+            int position = in.position();
+            T frame = decode(channelContext, in);
+            if (frame == null) {
+                ((Buffer) in).position(position);
+                return;
+            }
+            if (in.position() == position) {
+                throw new SocketException(getClass().getName() + ".decode() returned a frame without consuming any byte");
+            }
+            delegation.call(frame);
+        }
+    }
+
+    private static ByteBuffer ensureWritable(ByteBuffer cumulation, int len) {
+        if (cumulation.remaining() >= len) {
+            return cumulation;
+        }
+        int required = cumulation.position() + len;
+        int capacity = cumulation.capacity() << 1;
+        while (capacity < required && capacity > 0) {
+            capacity <<= 1;
+        }
+        ByteBuffer newCumulation = ByteBuffer.allocate(capacity > 0 ? capacity : required);
+        ((Buffer) cumulation).flip();
+        newCumulation.put(cumulation);
+        return newCumulation;
+    }
+}
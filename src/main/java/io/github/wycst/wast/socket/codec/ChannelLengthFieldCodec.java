@@ -0,0 +1,214 @@
+package io.github.wycst.wast.socket.codec;
+
+import io.github.wycst.wast.socket.exception.SocketException;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p> Length-field framing: [header (lengthFieldOffset bytes)][length field][body]. </p>
+ * <p> The length field is 1, 2, 3, 4 or 8 bytes (unsigned, BIG_ENDIAN or LITTLE_ENDIAN) or a varint (unsigned LEB128, up to 5 bytes),
+ * the frame ends lengthAdjustment bytes after the length value counted from the end of the length field,
+ * and the first initialBytesToStrip bytes of the frame are not delivered. </p>
+ * <p> A complete frame is delivered as a slice of the read buffer (no copy), only frames split across reads are aggregated,
+ * the slice is only valid during the ChannelHandler call (copy it to keep it). </p>
+ * <p> Stateless, one instance can be shared by all channels. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ChannelLengthFieldCodec extends ChannelFrameDecoder<ByteBuffer> implements ChannelWriter<ByteBuffer> {
+
+    /**
+     * lengthFieldLength of a varint length field
+     */
+    public static final int VARINT = 0;
+
+    final int maxFrameLength;
+    final boolean bigEndian;
+    final int lengthFieldOffset;
+    final int lengthFieldLength;
+    final int lengthAdjustment;
+    final int initialBytesToStrip;
+
+    /**
+     * length field at the beginning of the frame, stripped from the delivered body
+     *
+     * @param lengthFieldLength 1, 2, 3, 4, 8 or VARINT
+     */
+    public ChannelLengthFieldCodec(int lengthFieldLength) {
+        this(lengthFieldLength, 0, 0, -1);
+    }
+
+    /**
+     * @param lengthFieldLength   1, 2, 3, 4, 8 or VARINT
+     * @param lengthFieldOffset   bytes before the length field
+     * @param lengthAdjustment    added to the length value to get the bytes after the length field
+     * @param initialBytesToStrip bytes removed from the beginning of the delivered frame, -1 strips the header and the length field (whatever the varint width)
+     */
+    public ChannelLengthFieldCodec(int lengthFieldLength, int lengthFieldOffset, int lengthAdjustment, int initialBytesToStrip) {
+        this(Integer.MAX_VALUE, ByteOrder.BIG_ENDIAN, lengthFieldLength, lengthFieldOffset, lengthAdjustment, initialBytesToStrip);
+    }
+
+    /**
+     * @param maxFrameLength      max frame length (header and length field included), a longer frame fails as soon as its length is read
+     * @param byteOrder           order of the length field (ignored by VARINT)
+     * @param lengthFieldLength   1, 2, 3, 4, 8 or VARINT
+     * @param lengthFieldOffset   bytes before the length field
+     * @param lengthAdjustment    added to the length value to get the bytes after the length field
+     * @param initialBytesToStrip bytes removed from the beginning of the delivered frame, -1 strips the header and the length field (whatever the varint width)
+     */
+    public ChannelLengthFieldCodec(int maxFrameLength, ByteOrder byteOrder, int lengthFieldLength, int lengthFieldOffset, int lengthAdjustment, int initialBytesToStrip) {
+        byteOrder.getClass();
+        switch (lengthFieldLength) {
+            case VARINT:
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 8:
+                break;
+            default:
+                throw new IllegalArgumentException("lengthFieldLength must be 1, 2, 3, 4, 8 or VARINT: " + lengthFieldLength);
+        }
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be greater than 0: " + maxFrameLength);
+        }
+        if (lengthFieldOffset < 0) {
+            throw new IllegalArgumentException("lengthFieldOffset must not be negative: " + lengthFieldOffset);
+        }
+        if (initialBytesToStrip < -1) {
+            throw new IllegalArgumentException("initialBytesToStrip must be -1 or not negative: " + initialBytesToStrip);
+        }
+        this.maxFrameLength = maxFrameLength;
+        this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+        this.lengthFieldLength = lengthFieldLength;
+        this.lengthFieldOffset = lengthFieldOffset;
+        this.lengthAdjustment = lengthAdjustment;
+        this.initialBytesToStrip = initialBytesToStrip;
+    }
+
+    @Override
+    protected ByteBuffer decode(ChannelContext channelContext, ByteBuffer in) throws IOException {
+        int start = in.position();
+        int readable = in.remaining();
+        int index = start + lengthFieldOffset;
+        long length;
+        int headerLength;
+        if (lengthFieldLength == VARINT) {
+            length = 0;
+            int shift = 0, i = 0;
+            while (true) {
+                if (lengthFieldOffset + i >= readable) {
+                    return null;
+                }
+                byte b = in.get(index + i++);
+                length |= (long) (b & 0x7F) << shift;
+                if (b >= 0) break;
+                if ((shift += 7) > 28) {
+                    throw new SocketException("malformed varint length field");
+                }
+            }
+            headerLength = lengthFieldOffset + i;
+        } else {
+            headerLength = lengthFieldOffset + lengthFieldLength;
+            if (readable < headerLength) {
+                return null;
+            }
+            length = getLength(in, index);
+            if (length < 0) {
+                throw new SocketException("negative length field " + length);
+            }
+        }
+        long frameLength = headerLength + length + lengthAdjustment;
+        if (frameLength < headerLength) {
+            throw new SocketException("frame length " + frameLength + " is less than the length field end " + headerLength);
+        }
+        if (frameLength > maxFrameLength) {
+            // fail fast, do not cumulate a frame which will never be delivered
+            throw new SocketException("frame length " + frameLength + " exceeds max limit " + maxFrameLength);
+        }
+        if (readable < frameLength) {
+            return null;
+        }
+        int strip = initialBytesToStrip == -1 ? headerLength : initialBytesToStrip;
+        if (strip > frameLength) {
+            throw new SocketException("initialBytesToStrip " + strip + " is greater than the frame length " + frameLength);
+        }
+        int end = start + (int) frameLength;
+        ByteBuffer frame = in.duplicate();
+        ((Buffer) frame).limit(end);
+        ((Buffer) frame).position(start + strip);
+        ((Buffer) in).position(end);
+        return frame.slice();
+    }
+
+    private long getLength(ByteBuffer in, int index) {
+        long value = 0;
+        if (bigEndian) {
+            for (int i = 0; i < lengthFieldLength; ++i) {
+                value = value << 8 | (in.get(index + i) & 0xFF);
+            }
+        } else {
+            for (int i = lengthFieldLength - 1; i >= 0; --i) {
+                value = value << 8 | (in.get(index + i) & 0xFF);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * <p> body -> [header (zero filled)][length field][body], the inverse of decode when initialBytesToStrip covers the header and the length field. </p>
+     * <p> The length value is body.remaining() - lengthAdjustment, the body is copied (its position is not moved). </p>
+     *
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public ByteBuffer write(ByteBuffer body) throws IOException {
+        int bodyLength = body.remaining();
+        long length = (long) bodyLength - lengthAdjustment;
+        if (length < 0) {
+            throw new SocketException("body length " + bodyLength + " is less than lengthAdjustment " + lengthAdjustment);
+        }
+        int fieldLength = lengthFieldLength == VARINT ? varintLength(length) : lengthFieldLength;
+        if (lengthFieldLength != VARINT && fieldLength < 8 && length >>> (fieldLength << 3) != 0) {
+            throw new SocketException("length " + length + " does not fit in " + fieldLength + " bytes");
+        }
+        long frameLength = (long) lengthFieldOffset + fieldLength + bodyLength;
+        if (frameLength > maxFrameLength) {
+            throw new SocketException("frame length " + frameLength + " exceeds max limit " + maxFrameLength);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) frameLength);
+        ((Buffer) buf).position(lengthFieldOffset);
+        if (lengthFieldLength == VARINT) {
+            while ((length & ~0x7FL) != 0) {
+                buf.put((byte) ((length & 0x7F) | 0x80));
+                length >>>= 7;
+            }
+            buf.put((byte) length);
+        } else if (bigEndian) {
+            for (int i = fieldLength - 1; i >= 0; --i) {
+                buf.put((byte) (length >>> (i << 3)));
+            }
+        } else {
+            for (int i = 0; i < fieldLength; ++i) {
+                buf.put((byte) (length >>> (i << 3)));
+            }
+        }
+        buf.put(body.duplicate());
+        ((Buffer) buf).flip();
+        return buf;
+    }
+
+    static int varintLength(long value) {
+        int n = 1;
+        while ((value >>>= 7) != 0) {
+            ++n;
+        }
+        return n;
+    }
+}
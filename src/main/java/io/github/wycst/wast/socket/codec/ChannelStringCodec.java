@@ -62,8 +62,15 @@ public class ChannelStringCodec extends ChannelCodec<String> {
     @Override
     public final void read(ChannelContext channelContext, ByteBuffer buf, ChannelHandlerDelegation<String> delegation) throws IOException {
         if (buf.hasRemaining()) {
-            byte[] array = buf.array();
             int len = buf.remaining(), offset = 0, limit = len;
+            byte[] array;
+            if (buf.hasArray()) {
+                array = buf.array();
+            } else {
+                // direct buffer, copied into the scratch array of the connection (reserve 4 bytes for length)
+                array = channelContext.readScratch(Math.max(len, 4));
+                buf.get(array, 0, len);
+            }
             while (len > 0) {
                 byte firstByte = array[offset];
                 int contentLength;
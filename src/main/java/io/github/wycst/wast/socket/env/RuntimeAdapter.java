@@ -4,8 +4,15 @@ import sun.misc.Unsafe;
 
 import javax.net.ssl.SSLEngine;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Adaptation to different versions of JDK
@@ -53,6 +60,27 @@ public abstract class RuntimeAdapter {
 
     public static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
 
+    // sun.nio.ch.SelectorImpl and the offsets of its selectedKeys/publicSelectedKeys fields (null/-1 if not found)
+    static final Class<?> SELECTOR_IMPL_CLASS;
+    static final long SELECTED_KEYS_OFFSET;
+    static final long PUBLIC_SELECTED_KEYS_OFFSET;
+
+    static {
+        Class<?> selectorImplClass = null;
+        long selectedKeysOffset = -1, publicSelectedKeysOffset = -1;
+        try {
+            selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            // only the offsets are needed, Unsafe access does not require the module to be opened
+            selectedKeysOffset = UNSAFE.objectFieldOffset(selectorImplClass.getDeclaredField("selectedKeys"));
+            publicSelectedKeysOffset = UNSAFE.objectFieldOffset(selectorImplClass.getDeclaredField("publicSelectedKeys"));
+        } catch (Throwable throwable) {
+            selectorImplClass = null;
+        }
+        SELECTOR_IMPL_CLASS = selectorImplClass;
+        SELECTED_KEYS_OFFSET = selectedKeysOffset;
+        PUBLIC_SELECTED_KEYS_OFFSET = publicSelectedKeysOffset;
+    }
+
     public RuntimeAdapter() {
     }
 
@@ -71,7 +99,10 @@ public abstract class RuntimeAdapter {
         Class<? extends RuntimeAdapter> adapterClass;
         RuntimeAdapter adapterInstance;
         try {
-            if (JDK_VERSION >= 9) {
+            if (JDK_VERSION >= 21) {
+                adapterClass = (Class<? extends RuntimeAdapter>) Class.forName("io.github.wycst.wast.socket.env.RuntimeAdapterJDK21Plus");
+                adapterInstance = adapterClass.newInstance();
+            } else if (JDK_VERSION >= 9) {
                 adapterClass = (Class<? extends RuntimeAdapter>) Class.forName("io.github.wycst.wast.socket.env.RuntimeAdapterJDK9Plus");
                 adapterInstance = adapterClass.newInstance();
             } else {
@@ -88,6 +119,17 @@ public abstract class RuntimeAdapter {
         return UNSAFE.getInt(array, BYTE_ARRAY_OFFSET + offset);
     }
 
+    /**
+     * 8 bytes in native order (unchecked bounds)
+     *
+     * @param array
+     * @param offset
+     * @return
+     */
+    public final static long getLong(byte[] array, int offset) {
+        return UNSAFE.getLong(array, BYTE_ARRAY_OFFSET + offset);
+    }
+
     /**
      * get value
      *
@@ -116,4 +158,82 @@ public abstract class RuntimeAdapter {
     public String getSSLApplicationProtocol(SSLEngine sslEngine) {
         return null;
     }
+
+    /**
+     * whether SO_REUSEPORT can be set on a listening channel (JDK9+ and platform support)
+     *
+     * @return
+     */
+    public boolean isReusePortSupported() {
+        return false;
+    }
+
+    /**
+     * enable SO_REUSEPORT (before bind)
+     *
+     * @param channel
+     * @return false if not supported
+     */
+    public boolean setReusePort(NetworkChannel channel) {
+        return false;
+    }
+
+    /**
+     * <p> Replace the selected-key set of a newly opened selector (before any select). </p>
+     * <p> Both the internal set filled by select and the set returned by selectedKeys() become the given set. </p>
+     *
+     * @param selector     selector of the default provider
+     * @param selectedKeys replacement set
+     * @return false if the selector implementation is unknown
+     */
+    public boolean setSelectedKeys(Selector selector, Set<SelectionKey> selectedKeys) {
+        if (SELECTOR_IMPL_CLASS == null || !SELECTOR_IMPL_CLASS.isInstance(selector)) {
+            return false;
+        }
+        try {
+            UNSAFE.putObject(selector, SELECTED_KEYS_OFFSET, selectedKeys);
+            UNSAFE.putObject(selector, PUBLIC_SELECTED_KEYS_OFFSET, selectedKeys);
+            return true;
+        } catch (Throwable throwable) {
+            return false;
+        }
+    }
+
+    /**
+     * <p> Free the native memory (or unmap the file) of a direct buffer now instead of waiting for the gc. </p>
+     * <p> The buffer and all its views must not be used afterwards. </p>
+     *
+     * @param buf a direct or mapped buffer (not a slice or duplicate)
+     */
+    public void releaseDirectBuffer(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) return;
+        try {
+            // JDK8: sun.nio.ch.DirectBuffer.cleaner().clean()
+            Method cleanerMethod = buf.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buf);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Throwable throwable) {
+        }
+    }
+
+    /**
+     * whether virtual threads are available (JDK21+)
+     *
+     * @return
+     */
+    public boolean isVirtualThreadSupported() {
+        return false;
+    }
+
+    /**
+     * executor starting a new virtual thread for each task
+     *
+     * @return null if virtual threads are not supported
+     */
+    public ExecutorService newVirtualThreadExecutor() {
+        return null;
+    }
 }
@@ -0,0 +1,45 @@
+package io.github.wycst.wast.socket.env;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JDK21+ (virtual threads)
+ *
+ * @Date 2026/10/17
+ */
+class RuntimeAdapterJDK21Plus extends RuntimeAdapterJDK9Plus {
+
+    final static MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle methodHandle = null;
+        try {
+            methodHandle = LOOKUP.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (Throwable throwable) {
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = methodHandle;
+    }
+
+    public RuntimeAdapterJDK21Plus() {
+    }
+
+    @Override
+    public boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    @Override
+    public ExecutorService newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke();
+        } catch (Throwable throwable) {
+            return null;
+        }
+    }
+}
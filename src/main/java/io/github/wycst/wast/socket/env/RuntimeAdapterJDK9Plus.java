@@ -1,9 +1,17 @@
 package io.github.wycst.wast.socket.env;
 
+import sun.misc.Unsafe;
+
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import java.lang.invoke.*;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.charset.Charset;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -17,6 +25,10 @@ class RuntimeAdapterJDK9Plus extends RuntimeAdapter {
     final static MethodHandles.Lookup LOOKUP;
     final static Function<SSLEngine, String> APPLICATION_PROTOCOL_GET_FUNCTION;
     final static BiConsumer<SSLParameters, String[]> APPLICATIONPROTOCOLS_SET_CONSUMER;
+    // StandardSocketOptions.SO_REUSEPORT (JDK9+), null if the platform does not support it
+    final static SocketOption<Boolean> SO_REUSEPORT;
+    // Unsafe.invokeCleaner(ByteBuffer) bound to UNSAFE (JDK9+), null if not accessible
+    final static MethodHandle INVOKE_CLEANER;
 
     static {
         MethodHandles.Lookup lookup = null;
@@ -59,6 +71,29 @@ class RuntimeAdapterJDK9Plus extends RuntimeAdapter {
         } catch (Throwable throwable) {
             throw new UnsupportedOperationException(throwable);
         }
+
+        SocketOption<Boolean> reusePort = null;
+        try {
+            reusePort = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                if (!channel.supportedOptions().contains(reusePort)) {
+                    reusePort = null;
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (Throwable throwable) {
+            reusePort = null;
+        }
+        SO_REUSEPORT = reusePort;
+
+        MethodHandle invokeCleaner = null;
+        try {
+            invokeCleaner = LOOKUP.findVirtual(Unsafe.class, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class)).bindTo(UNSAFE);
+        } catch (Throwable throwable) {
+        }
+        INVOKE_CLEANER = invokeCleaner;
     }
 
     public RuntimeAdapterJDK9Plus() {
@@ -82,6 +117,35 @@ class RuntimeAdapterJDK9Plus extends RuntimeAdapter {
         sslEngine.setSSLParameters(sslParameters);
     }
 
+    @Override
+    public boolean isReusePortSupported() {
+        return SO_REUSEPORT != null;
+    }
+
+    @Override
+    public boolean setReusePort(NetworkChannel channel) {
+        if (SO_REUSEPORT == null) {
+            return false;
+        }
+        try {
+            channel.setOption(SO_REUSEPORT, Boolean.TRUE);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void releaseDirectBuffer(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect() || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invokeExact(buf);
+        } catch (Throwable throwable) {
+        }
+    }
+
     @Override
     public String getSSLApplicationProtocol(SSLEngine sslEngine) {
         return sslEngine == null ? null : APPLICATION_PROTOCOL_GET_FUNCTION.apply(sslEngine);
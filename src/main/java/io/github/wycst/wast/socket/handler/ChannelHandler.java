@@ -17,6 +17,9 @@ public abstract class ChannelHandler<T> {
 
     /**
      * <p> call when data reading is completed</p>
+     * <p> With ChannelReader.UNDO the message is the read buffer itself, which comes from ChannelConfig.bufferAllocator (pooled by default):
+     * it is cleared and recycled (possibly for another channel) once onHandle returns, so it must not be kept, or used by another thread, after the call.
+     * Copy it if needed, or configure ByteBufferAllocator.UNPOOLED. The same holds for the array passed to a ChannelBytesReader. </p>
      *
      * @param channelContext context
      * @param message        Encoded or aggregated object
@@ -30,7 +30,7 @@ public abstract class IdleStateHandler {
     }
 
     /**
-     * Trigger hook when idle
+     * Trigger hook when idle (called on the timer thread shared by the server, do not block)
      *
      * @param ctx                     context
      * @param idleType                IdleTypeRead | IdleTypeWrite
@@ -1,5 +1,6 @@
 package io.github.wycst.wast.socket.handler;
 
+import io.github.wycst.wast.socket.exception.SocketException;
 import io.github.wycst.wast.socket.tcp.ChannelContext;
 
 import java.util.concurrent.ScheduledFuture;
@@ -30,6 +31,8 @@ public class IdleStateHandlerTrigger {
     ScheduleReadTask scheduleReadTask;
     ScheduledFuture readIdleFuture;
     ScheduledFuture writeIdleFuture;
+    // set when the channel is closed, the tasks are not scheduled again
+    volatile boolean released;
     final static long MIN_NANOS = 1000000000L;
 
     public IdleStateHandlerTrigger(IdleStateHandler idleStateHandler, ChannelContext channelContext) {
@@ -50,6 +53,7 @@ public class IdleStateHandlerTrigger {
     }
 
     public void release() {
+        released = true;
         if (readIdleFuture != null) {
             readIdleFuture.cancel(false);
         }
@@ -61,6 +65,7 @@ public class IdleStateHandlerTrigger {
     class ScheduleWriteTask implements Runnable {
         @Override
         public void run() {
+            if (isReleased()) return;
             long useNanos = System.nanoTime() - lastWriteNanos;
             long rem = writerIdleTimeNanos - useNanos;
             writeIdleFuture.cancel(false);
@@ -81,6 +86,7 @@ public class IdleStateHandlerTrigger {
     class ScheduleReadTask implements Runnable {
         @Override
         public void run() {
+            if (isReleased()) return;
             long useNanos = System.nanoTime() - lastReadNanos;
             long rem = readerIdleTimeNanos - useNanos;
             readIdleFuture.cancel(false);
@@ -99,7 +105,18 @@ public class IdleStateHandlerTrigger {
     }
 
     private void scheduleWriteTask(long timeNanos) {
-        writeIdleFuture = channelContext.schedule(scheduleWriteTask, timeNanos, TimeUnit.NANOSECONDS);
+        if (isReleased()) return;
+        try {
+            writeIdleFuture = channelContext.schedule(scheduleWriteTask, timeNanos, TimeUnit.NANOSECONDS);
+        } catch (SocketException e) {
+            // closed meanwhile
+            if (isReleased()) return;
+            throw e;
+        }
+        if (released) {
+            // release() ran before the future was assigned
+            writeIdleFuture.cancel(false);
+        }
     }
 
     private void increaseTriggerWriteCount() {
@@ -114,7 +131,22 @@ public class IdleStateHandlerTrigger {
     }
 
     private void scheduleReadTask(long timeNanos) {
-        readIdleFuture = channelContext.schedule(scheduleReadTask, timeNanos, TimeUnit.NANOSECONDS);
+        if (isReleased()) return;
+        try {
+            readIdleFuture = channelContext.schedule(scheduleReadTask, timeNanos, TimeUnit.NANOSECONDS);
+        } catch (SocketException e) {
+            // closed meanwhile
+            if (isReleased()) return;
+            throw e;
+        }
+        if (released) {
+            // release() ran before the future was assigned
+            readIdleFuture.cancel(false);
+        }
+    }
+
+    private boolean isReleased() {
+        return released || channelContext.isClosed();
     }
 
     private void increaseTriggerReadCount() {
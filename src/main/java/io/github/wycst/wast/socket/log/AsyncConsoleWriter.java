@@ -0,0 +1,222 @@
+package io.github.wycst.wast.socket.log;
+
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * <p> Asynchronous console backend of ConsoleLog: the logging threads publish into a bounded ring buffer (preallocated entries, lock-free),
+ * one writer thread formats the records into a reused builder and writes them to System.out in batches. </p>
+ * <p> A record published when the ring is full is dropped and counted, the logging thread never waits for the console. </p>
+ * <p> The parameters are formatted by the writer thread, their toString must be thread safe. </p>
+ *
+ * @Date 2026/10/17
+ */
+final class AsyncConsoleWriter implements Runnable {
+
+    // records formatted before one write
+    static final int MAX_BATCH = 256;
+    // chars of the builder kept between batches
+    static final int MAX_RETAINED_CHARS = 64 << 10;
+
+    final Entry[] entries;
+    final int mask;
+    // next sequence claimed by a producer
+    final AtomicLong tail = new AtomicLong();
+    // next sequence read by the writer, only written by the writer thread
+    long head;
+    final LongAdder dropped = new LongAdder();
+    private long droppedReported;
+
+    final Thread thread;
+    volatile boolean running = true;
+    // the writer is about to park, producers unpark it
+    volatile boolean parked;
+
+    private StringBuilder builder = new StringBuilder(4096);
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(16 << 10);
+
+    /**
+     * @param capacity rounded up to a power of 2
+     */
+    AsyncConsoleWriter(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.entries = new Entry[size];
+        for (int i = 0; i < size; ++i) {
+            entries[i] = new Entry(i);
+        }
+        this.mask = size - 1;
+        this.thread = new Thread(this, "wast-socket-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * publish a record, called by any thread
+     *
+     * @return false if the ring is full (the record is dropped)
+     */
+    boolean publish(Level level, String loggerName, String message, Object[] parameters, Throwable thrown) {
+        Entry entry;
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            entry = entries[(int) sequence & mask];
+            long entrySequence = entry.sequence;
+            if (entrySequence == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) break;
+            } else if (entrySequence < sequence) {
+                // not read yet by the writer
+                dropped.increment();
+                return false;
+            }
+            // claimed by another producer meanwhile
+        }
+        entry.millis = System.currentTimeMillis();
+        entry.threadName = Thread.currentThread().getName();
+        entry.level = level;
+        entry.loggerName = loggerName;
+        entry.message = message;
+        entry.parameters = parameters;
+        entry.thrown = thrown;
+        // release to the writer
+        entry.sequence = sequence + 1;
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return entries[(int) head & mask].sequence != head + 1;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (drain() == 0) {
+                    parked = true;
+                    if (isEmpty() && running) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    parked = false;
+                }
+            } catch (Throwable throwable) {
+                // never let the writer die
+                throwable.printStackTrace();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * format and write the published records (at most MAX_BATCH per write)
+     *
+     * @return records written
+     */
+    int drain() {
+        int total = 0;
+        while (true) {
+            StringBuilder builder = this.builder;
+            builder.setLength(0);
+            int count = 0;
+            while (count < MAX_BATCH) {
+                Entry entry = entries[(int) head & mask];
+                if (entry.sequence != head + 1) break;
+                ConsoleFormatter.format(builder, entry.millis, entry.threadName, entry.level, entry.loggerName, entry.message, entry.parameters, entry.thrown);
+                entry.clear();
+                // give the entry back to the producers
+                entry.sequence = head + entries.length;
+                ++head;
+                ++count;
+            }
+            long droppedCount = dropped.sum();
+            if (droppedCount != droppedReported) {
+                ConsoleFormatter.format(builder, System.currentTimeMillis(), thread.getName(), Level.WARNING, AsyncConsoleWriter.class.getName(),
+                        "{} log records dropped (ring buffer full)", new Object[]{droppedCount - droppedReported}, null);
+                droppedReported = droppedCount;
+            }
+            if (builder.length() > 0) {
+                write(builder);
+            }
+            if (builder.capacity() > MAX_RETAINED_CHARS) {
+                this.builder = new StringBuilder(4096);
+            }
+            total += count;
+            if (count < MAX_BATCH) {
+                return total;
+            }
+        }
+    }
+
+    private void write(CharSequence chars) {
+        PrintStream out = System.out;
+        CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        while (encoder.encode(in, bytes, true).isOverflow()) {
+            writeBytes(out);
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            writeBytes(out);
+        }
+        writeBytes(out);
+        out.flush();
+    }
+
+    private void writeBytes(PrintStream out) {
+        out.write(bytes.array(), 0, bytes.position());
+        ((Buffer) bytes).clear();
+    }
+
+    /**
+     * stop the writer after the published records are written
+     *
+     * @param timeoutMillis
+     */
+    void shutdown(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class Entry {
+        volatile long sequence;
+        long millis;
+        String threadName;
+        Level level;
+        String loggerName;
+        String message;
+        Object[] parameters;
+        Throwable thrown;
+
+        Entry(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void clear() {
+            threadName = null;
+            loggerName = null;
+            message = null;
+            parameters = null;
+            thrown = null;
+        }
+    }
+}
@@ -16,18 +16,19 @@ public class ConsoleFormatter extends Formatter {
         }
     };
 
+    // builder reused by the formatting thread (trimmed back when a large record grew it)
+    static ThreadLocal<StringBuilder> builderThreadLocal = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
     @Override
     public String format(LogRecord record) {
 
-        StringBuilder sb = new StringBuilder();
-        appendMillis(sb, record.getMillis());
-        sb.append(" [");
-        sb.append(Thread.currentThread().getName());
-        sb.append("] ");
-        sb.append(formatLevel(record.getLevel()));
-        sb.append(" ");
-        sb.append(record.getLoggerName());
-        sb.append(" - ");
+        StringBuilder sb = builderThreadLocal.get();
+        sb.setLength(0);
 
         // message
         String message = record.getMessage();
@@ -40,25 +41,45 @@ public class ConsoleFormatter extends Formatter {
                 message = record.getMessage();
             }
         }
+        format(sb, record.getMillis(), Thread.currentThread().getName(), record.getLevel(), record.getLoggerName(), message, record.getParameters(), record.getThrown());
 
-        // parse parameters
-        Object[] parameters = record.getParameters();
-        if (parameters != null && parameters.length > 0) {
-            // 替换占位符
-            message = replacePlaceholder(message, "{}", parameters);
+        String result = sb.toString();
+        if (sb.capacity() > 8192) {
+            builderThreadLocal.remove();
         }
-        sb.append(message);
-        sb.append("\n");
+        return result;
+    }
 
-        boolean isException = record.getThrown() != null;
-        if (isException) {
-            sb.append(getThrowableContent(record.getThrown()));
+    /**
+     * append a formatted record (line and stack trace) to the builder
+     *
+     * @param sb
+     * @param millis
+     * @param threadName
+     * @param level
+     * @param loggerName
+     * @param message
+     * @param parameters
+     * @param thrown
+     */
+    static void format(StringBuilder sb, long millis, String threadName, Level level, String loggerName, String message, Object[] parameters, Throwable thrown) {
+        appendMillis(sb, millis);
+        sb.append(" [");
+        sb.append(threadName);
+        sb.append("] ");
+        sb.append(formatLevel(level));
+        sb.append(" ");
+        sb.append(loggerName);
+        sb.append(" - ");
+        // 替换占位符
+        appendPlaceholder(sb, message, "{}", parameters);
+        sb.append("\n");
+        if (thrown != null) {
+            sb.append(getThrowableContent(thrown));
         }
-
-        return sb.toString();
     }
 
-    private void appendMillis(StringBuilder sb, long millis) {
+    private static void appendMillis(StringBuilder sb, long millis) {
         Calendar calendar = calendarThreadLocal.get();
         calendar.setTimeInMillis(millis);
         // "Y-M-d H:m:s.S"
@@ -99,10 +120,17 @@ public class ConsoleFormatter extends Formatter {
             sb.append(0).append(second);
         }
         sb.append('.');
-        sb.append(calendar.get(Calendar.MILLISECOND));
+        int millisecond = calendar.get(Calendar.MILLISECOND);
+        if (millisecond < 100) {
+            sb.append(0);
+            if (millisecond < 10) {
+                sb.append(0);
+            }
+        }
+        sb.append(millisecond);
     }
 
-    private String formatLevel(Level level) {
+    private static String formatLevel(Level level) {
         String levelName = level.getName();
         if (level == Level.INFO) {
             return "INFO ";
@@ -125,16 +153,29 @@ public class ConsoleFormatter extends Formatter {
      * @return
      */
     public static String replacePlaceholder(String message, String placeholder, Object... parameters) {
-
-        int parameterCount;
-        if (placeholder == null || placeholder.length() == 0 || parameters == null || (parameterCount = parameters.length) == 0) {
-            return message;
-        }
-        int placeholderIndex = -1;
-        if ((placeholderIndex = message.indexOf(placeholder)) == -1) {
+        if (placeholder == null || placeholder.length() == 0 || parameters == null || parameters.length == 0 || message.indexOf(placeholder) == -1) {
             return message;
         }
         StringBuilder buffer = new StringBuilder();
+        appendPlaceholder(buffer, message, placeholder, parameters);
+        return buffer.toString();
+    }
+
+    /**
+     * replacePlaceholder appending to the builder
+     *
+     * @param buffer
+     * @param message
+     * @param placeholder
+     * @param parameters
+     */
+    static void appendPlaceholder(StringBuilder buffer, String message, String placeholder, Object[] parameters) {
+        int parameterCount;
+        int placeholderIndex;
+        if (message == null || parameters == null || (parameterCount = parameters.length) == 0 || (placeholderIndex = message.indexOf(placeholder)) == -1) {
+            buffer.append(message);
+            return;
+        }
         int fromIndex = 0;
         int placeholderLen = placeholder.length();
         int i = 0;
@@ -151,8 +192,6 @@ public class ConsoleFormatter extends Formatter {
         if (fromIndex < message.length()) {
             buffer.append(message, fromIndex, message.length());
         }
-
-        return buffer.toString();
     }
 
     public static String getThrowableContent(Throwable t) {
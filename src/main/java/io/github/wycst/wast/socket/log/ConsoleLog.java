@@ -17,6 +17,10 @@ public final class ConsoleLog {
 
     private static final Map<Class<?>, ConsoleLog> LOGGERS = new ConcurrentHashMap<Class<?>, ConsoleLog>();
     private static final java.util.logging.ConsoleHandler CONSOLE_HANDLER;
+    // capacity of the async ring buffer, eg: -Dwast.socket.log.async=8192
+    public static final String ASYNC_PROPERTY = "wast.socket.log.async";
+    // async backend, null if the records are written by the logging thread (java.util.logging)
+    private static volatile AsyncConsoleWriter asyncWriter;
 
     static {
         CONSOLE_HANDLER = new java.util.logging.ConsoleHandler() {
@@ -26,10 +30,20 @@ public final class ConsoleLog {
             }
         };
         CONSOLE_HANDLER.setFormatter(new ConsoleFormatter());
+        String asyncCapacity = System.getProperty(ASYNC_PROPERTY);
+        if (asyncCapacity != null && asyncCapacity.length() > 0) {
+            try {
+                enableAsync(Integer.parseInt(asyncCapacity.trim()));
+            } catch (NumberFormatException e) {
+                enableAsync(8192);
+            }
+        }
     }
 
     private final String loggerName;
     private final Logger logger;
+    // Level.intValue() of the logger, checked before any record is built
+    private volatile int levelValue = Level.ALL.intValue();
 
     public static ConsoleLog getLog(Class<?> logCls) {
         synchronized (logCls) {
@@ -65,6 +79,72 @@ public final class ConsoleLog {
         return className.replaceAll("(\\w)\\w*[.]", "$1.");
     }
 
+    /**
+     * <p> Write the records of all the loggers from a single background thread through a bounded ring buffer of the given capacity. </p>
+     * <p> The logging thread never blocks on the console: if the ring is full the record is dropped and counted (getDroppedCount),
+     * the writer reports the drops with a WARN line. </p>
+     * <p> The parameters are formatted later by the writer thread. </p>
+     *
+     * @param capacity ring buffer size (rounded up to a power of 2)
+     */
+    public static synchronized void enableAsync(int capacity) {
+        if (asyncWriter != null) {
+            return;
+        }
+        asyncWriter = new AsyncConsoleWriter(capacity);
+        final AsyncConsoleWriter writer = asyncWriter;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writer.shutdown(1000);
+            }
+        }, "wast-socket-log-shutdown"));
+    }
+
+    /**
+     * back to synchronous writes, the queued records are written before returning
+     */
+    public static synchronized void disableAsync() {
+        AsyncConsoleWriter writer = asyncWriter;
+        if (writer != null) {
+            asyncWriter = null;
+            writer.shutdown(5000);
+        }
+    }
+
+    public static boolean isAsync() {
+        return asyncWriter != null;
+    }
+
+    /**
+     * @return records dropped by the async backend because the ring buffer was full
+     */
+    public static long getDroppedCount() {
+        AsyncConsoleWriter writer = asyncWriter;
+        return writer == null ? 0 : writer.dropped.sum();
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.CONFIG);
+    }
+
+    public boolean isInfoEnabled() {
+        return isEnabled(Level.INFO);
+    }
+
+    public boolean isWarnEnabled() {
+        return isEnabled(Level.WARNING);
+    }
+
+    public boolean isErrorEnabled() {
+        return isEnabled(Level.SEVERE);
+    }
+
+    private boolean isEnabled(Level level) {
+        int value = levelValue;
+        return level.intValue() >= value && value != Level.OFF.intValue();
+    }
+
     public void debug(String msg, Object... args) {
         log(Level.CONFIG, msg, args);
     }
@@ -82,13 +162,23 @@ public final class ConsoleLog {
     }
 
     private void log(Level level, String msg, Object[] args) {
-        if (logger.isLoggable(level)) {
-            logger.log(level, msg, args);
+        if (isEnabled(level)) {
+            AsyncConsoleWriter writer = asyncWriter;
+            if (writer != null) {
+                writer.publish(level, loggerName, msg, args, null);
+            } else {
+                logger.log(level, msg, args);
+            }
         }
     }
 
     public void error(String msg, Throwable throwable, Object... args) {
-        if (logger.isLoggable(Level.SEVERE)) {
+        if (isEnabled(Level.SEVERE)) {
+            AsyncConsoleWriter writer = asyncWriter;
+            if (writer != null) {
+                writer.publish(Level.SEVERE, loggerName, msg, args, throwable);
+                return;
+            }
             LogRecord logRecord = new LogRecord(Level.SEVERE, msg);
             logRecord.setParameters(args);
             logRecord.setLoggerName(loggerName);
@@ -99,5 +189,6 @@ public final class ConsoleLog {
 
     public void setLevel(Level level) {
         logger.setLevel(level);
+        levelValue = level == null ? Level.INFO.intValue() : level.intValue();
     }
 }
@@ -0,0 +1,295 @@
+package io.github.wycst.wast.socket.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p> Server-wide metrics of a TCPServer. </p>
+ * <p> Counters are LongAdder (striped cells): the acceptor, worker and runner threads update them without contention,
+ * the sum is only computed when a snapshot is read. </p>
+ * <p> Gauges (queue depths, pending bytes ...) are callbacks sampled by the snapshot, they cost nothing on the hot path. </p>
+ * <p> Exposed as a JMX MXBean (registerMBean) and as Prometheus text (toPrometheusText). </p>
+ *
+ * @Date 2026/10/17
+ */
+public final class ServerMetrics implements ServerMetricsMXBean {
+
+    public static final String PREFIX = "wast_socket_";
+
+    /**
+     * value sampled when a snapshot is taken
+     */
+    public interface Gauge {
+        long value();
+    }
+
+    final int port;
+    final LongAdder accepted = new LongAdder();
+    final LongAdder acceptErrors = new LongAdder();
+    final LongAdder connectionsOpened = new LongAdder();
+    final LongAdder connectionsClosed = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    // write syscalls (write, gathering write, transferTo) on the sockets
+    final LongAdder writes = new LongAdder();
+    // runner runs (read, decode and handle of a readiness event)
+    final LongAdder reads = new LongAdder();
+    final LongAdder readTimeNanos = new LongAdder();
+    final LongAdder readErrors = new LongAdder();
+    // time in ChannelHandler.onHandle only
+    final LongAdder handlerTimeNanos = new LongAdder();
+    // exceptions thrown by the ChannelReader itself (not by the handler it calls)
+    final LongAdder decodeErrors = new LongAdder();
+    private final List<Sampled> sampled = new CopyOnWriteArrayList<Sampled>();
+    private ObjectName objectName;
+
+    public ServerMetrics(int port) {
+        this.port = port;
+    }
+
+    public void incrementAccepted() {
+        accepted.increment();
+    }
+
+    public void incrementAcceptErrors() {
+        acceptErrors.increment();
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * one write syscall on a socket
+     *
+     * @param bytes bytes written by the call
+     */
+    public void addWrite(long bytes) {
+        writes.increment();
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * a readiness event was handled
+     *
+     * @param nanos time of the runner run: reading, decoding and handling (in EXECUTOR mode also the time blocked in ChannelContext.awaitRead)
+     */
+    public void addRead(long nanos) {
+        reads.increment();
+        readTimeNanos.add(nanos);
+    }
+
+    public void incrementReadErrors() {
+        readErrors.increment();
+    }
+
+    /**
+     * @param nanos time spent in one ChannelHandler.onHandle call
+     */
+    public void addHandlerTime(long nanos) {
+        handlerTimeNanos.add(nanos);
+    }
+
+    public void incrementDecodeErrors() {
+        decodeErrors.increment();
+    }
+
+    /**
+     * <p> Register a sampled value, rendered in registration order (register the series of a name one after another). </p>
+     *
+     * @param name   metric name without prefix (counters end with _total)
+     * @param labels extra labels (name="value",...), null if none
+     * @param type   gauge or counter
+     * @param help
+     * @param gauge
+     */
+    public void register(String name, String labels, String type, String help, Gauge gauge) {
+        name.getClass();
+        gauge.getClass();
+        sampled.add(new Sampled(name, labels, type, help, gauge));
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getAcceptErrors() {
+        return acceptErrors.sum();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        // closed first: a connection closed between the two sums is not counted as active
+        long closed = connectionsClosed.sum();
+        return connectionsOpened.sum() - closed;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @Override
+    public long getReads() {
+        return reads.sum();
+    }
+
+    @Override
+    public long getReadTimeNanos() {
+        return readTimeNanos.sum();
+    }
+
+    @Override
+    public long getReadErrors() {
+        return readErrors.sum();
+    }
+
+    @Override
+    public long getHandlerTimeNanos() {
+        return handlerTimeNanos.sum();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> gauges = new LinkedHashMap<String, Long>();
+        for (Sampled s : sampled) {
+            gauges.put(s.labels == null ? s.name : s.name + "{" + s.labels + "}", s.gauge.value());
+        }
+        return gauges;
+    }
+
+    /**
+     * Prometheus text exposition format (version 0.0.4), every series is labeled with the server port
+     *
+     * @return
+     */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder(2048);
+        String portLabel = "port=\"" + port + "\"";
+        append(builder, "accepted_total", null, portLabel, "counter", "Accepted connections.", getAccepted());
+        append(builder, "accept_errors_total", null, portLabel, "counter", "Accepted connections closed by a registration error.", getAcceptErrors());
+        append(builder, "connections_opened_total", null, portLabel, "counter", "Connections registered to a worker.", getConnectionsOpened());
+        append(builder, "connections_closed_total", null, portLabel, "counter", "Connections closed.", getConnectionsClosed());
+        append(builder, "connections_active", null, portLabel, "gauge", "Open connections.", getActiveConnections());
+        append(builder, "read_bytes_total", null, portLabel, "counter", "Bytes read from the sockets.", getBytesRead());
+        append(builder, "written_bytes_total", null, portLabel, "counter", "Bytes written to the sockets.", getBytesWritten());
+        append(builder, "writes_total", null, portLabel, "counter", "Write syscalls on the sockets (gathering writes count once).", getWrites());
+        append(builder, "reads_total", null, portLabel, "counter", "Readiness events handled (read, decode and handle).", getReads());
+        appendSeconds(builder, "read_seconds_total", portLabel, "Time spent reading, decoding and handling (in EXECUTOR mode also waiting for more bytes).", getReadTimeNanos());
+        appendSeconds(builder, "handler_seconds_total", portLabel, "Time spent in the channel handler.", getHandlerTimeNanos());
+        append(builder, "read_errors_total", null, portLabel, "counter", "Reads failed by an io, decode or handler error (the connection is closed).", getReadErrors());
+        append(builder, "decode_errors_total", null, portLabel, "counter", "Exceptions thrown by the channel reader (decoder), not by the handler.", getDecodeErrors());
+        String previous = null;
+        for (Sampled s : sampled) {
+            String help = s.name.equals(previous) ? null : s.help;
+            append(builder, s.name, s.labels, portLabel, help == null ? null : s.type, help, s.gauge.value());
+            previous = s.name;
+        }
+        return builder.toString();
+    }
+
+    private static void appendSeconds(StringBuilder builder, String name, String portLabel, String help, long nanos) {
+        builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        builder.append(PREFIX).append(name).append('{').append(portLabel).append("} ").append(nanos / 1e9).append('\n');
+    }
+
+    private static void append(StringBuilder builder, String name, String labels, String portLabel, String type, String help, long value) {
+        if (help != null) {
+            builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+            builder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        }
+        builder.append(PREFIX).append(name).append('{').append(portLabel);
+        if (labels != null) {
+            builder.append(',').append(labels);
+        }
+        builder.append("} ").append(value).append('\n');
+    }
+
+    /**
+     * register this as a platform MXBean: io.github.wycst.wast.socket:type=ServerMetrics,port=...
+     *
+     * @throws JMException
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (objectName == null) {
+            ObjectName name = new ObjectName("io.github.wycst.wast.socket:type=ServerMetrics,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        }
+        return objectName;
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+            }
+            objectName = null;
+        }
+    }
+
+    static final class Sampled {
+        final String name;
+        final String labels;
+        final String type;
+        final String help;
+        final Gauge gauge;
+
+        Sampled(String name, String labels, String type, String help, Gauge gauge) {
+            this.name = name;
+            this.labels = labels;
+            this.type = type;
+            this.help = help;
+            this.gauge = gauge;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.wycst.wast.socket.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the ServerMetrics of a TCPServer (ObjectName io.github.wycst.wast.socket:type=ServerMetrics,port=...)
+ *
+ * @Date 2026/10/17
+ */
+public interface ServerMetricsMXBean {
+
+    long getAccepted();
+
+    long getAcceptErrors();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    long getActiveConnections();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getWrites();
+
+    long getReads();
+
+    long getReadTimeNanos();
+
+    long getReadErrors();
+
+    /**
+     * time spent in ChannelHandler.onHandle
+     *
+     * @return
+     */
+    long getHandlerTimeNanos();
+
+    /**
+     * exceptions thrown by the ChannelReader (decoder), the errors of the handler are not counted
+     *
+     * @return
+     */
+    long getDecodeErrors();
+
+    /**
+     * sampled values (queue depths, pending bytes ...) by name and labels
+     *
+     * @return
+     */
+    Map<String, Long> getGauges();
+}
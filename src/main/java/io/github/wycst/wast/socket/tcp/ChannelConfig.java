@@ -1,10 +1,16 @@
 package io.github.wycst.wast.socket.tcp;
 
+import io.github.wycst.wast.socket.buffer.ByteBufferAllocator;
+import io.github.wycst.wast.socket.buffer.PooledByteBufferAllocator;
 import io.github.wycst.wast.socket.codec.ChannelReader;
 import io.github.wycst.wast.socket.factory.ChannelHandlerFactory;
 import io.github.wycst.wast.socket.factory.ChannelReaderFactory;
 import io.github.wycst.wast.socket.handler.ChannelHandler;
 import io.github.wycst.wast.socket.handler.IdleStateHandler;
+import io.github.wycst.wast.socket.metrics.ServerMetrics;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * tcp server config
@@ -25,6 +31,102 @@ public final class ChannelConfig {
     private IdleStateHandler idleStateHandler;
     private ChannelHandlerFactory channelHandlerFactory = singletonChannelHandlerFactory();
     private ChannelReaderFactory channelReaderFactory = singletonChannelReaderFactory();
+    private ByteBufferAllocator bufferAllocator = PooledByteBufferAllocator.DEFAULT;
+    private RunMode runMode = RunMode.EXECUTOR;
+    private long writeHighWaterMark = 16L << 20;
+    // outbound spill to disk, disabled if spillThreshold <= 0
+    private long spillThreshold = -1;
+    private File spillDirectory;
+    private long maxSpillBytesPerChannel = 1L << 30;
+    private long maxSpillBytes = 16L << 30;
+    // bytes mapped by the spills of all the channels
+    final AtomicLong spilledBytes = new AtomicLong();
+    // completed ssl handshakes
+    final AtomicLong fullHandshakes = new AtomicLong();
+    final AtomicLong resumedHandshakes = new AtomicLong();
+    // metrics of the server, null if disabled (set by TCPServer.start)
+    ServerMetrics metrics;
+
+    /**
+     * <p> When the in-memory pending bytes of a channel exceed the threshold, further writes are spilled to memory-mapped segments of a temporary file
+     * and sent from there as the socket drains (keeps slow consumers from filling the heap). </p>
+     * <p> Disabled if threshold <= 0 (default), raise writeHighWaterMark too if producers check ChannelContext.isWritable(). </p>
+     *
+     * @param spillThreshold
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * directory of the spill files (default java.io.tmpdir)
+     *
+     * @param spillDirectory
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * max mapped spill bytes of one channel (default 1GB), a write beyond it throws SocketException
+     *
+     * @param maxSpillBytesPerChannel
+     */
+    public void setMaxSpillBytesPerChannel(long maxSpillBytesPerChannel) {
+        this.maxSpillBytesPerChannel = Math.max(maxSpillBytesPerChannel, ChannelOutboundSpill.SEGMENT_SIZE);
+    }
+
+    public long getMaxSpillBytesPerChannel() {
+        return maxSpillBytesPerChannel;
+    }
+
+    /**
+     * max mapped spill bytes of all the channels (default 16GB), a write beyond it throws SocketException
+     *
+     * @param maxSpillBytes
+     */
+    public void setMaxSpillBytes(long maxSpillBytes) {
+        this.maxSpillBytes = Math.max(maxSpillBytes, ChannelOutboundSpill.SEGMENT_SIZE);
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    /**
+     * bytes currently mapped by the spills of all the channels
+     *
+     * @return
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * ssl handshakes which created a new session
+     *
+     * @return
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * ssl handshakes which resumed a cached session or a session ticket (abbreviated handshakes)
+     *
+     * @return
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
 
     public void setReadBufferSize(int readBufferSize) {
         this.readBufferSize = Math.max(readBufferSize, 512);
@@ -42,6 +144,43 @@ public final class ChannelConfig {
         this.writeBufferSize = Math.max(writeBufferSize, 512);
     }
 
+    /**
+     * <p> Allocator of the read buffers (plain read buffer, ssl packet/application input buffers). </p>
+     * <p> Read buffers are released after ChannelReader.read returns, so a reader or handler must not keep a reference of the ByteBuffer (copy it if necessary). </p>
+     *
+     * @param bufferAllocator
+     */
+    public void setBufferAllocator(ByteBufferAllocator bufferAllocator) {
+        bufferAllocator.getClass();
+        this.bufferAllocator = bufferAllocator;
+    }
+
+    public ByteBufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
+    public void setRunMode(RunMode runMode) {
+        runMode.getClass();
+        this.runMode = runMode;
+    }
+
+    public RunMode getRunMode() {
+        return runMode;
+    }
+
+    /**
+     * When the bytes waiting in the outbound queue of a channel reach this mark, ChannelContext.isWritable() returns false
+     *
+     * @param writeHighWaterMark
+     */
+    public void setWriteHighWaterMark(long writeHighWaterMark) {
+        this.writeHighWaterMark = Math.max(writeHighWaterMark, 1);
+    }
+
+    public long getWriteHighWaterMark() {
+        return writeHighWaterMark;
+    }
+
     public ChannelConfig self() {
         return this;
     }
@@ -1,29 +1,79 @@
 package io.github.wycst.wast.socket.tcp;
 
+import io.github.wycst.wast.socket.exception.SocketException;
 import io.github.wycst.wast.socket.handler.ChannelHandler;
 import io.github.wycst.wast.socket.handler.IdleStateHandler;
 import io.github.wycst.wast.socket.handler.IdleStateHandlerTrigger;
+import io.github.wycst.wast.socket.metrics.ServerMetrics;
+import io.github.wycst.wast.socket.util.HashedWheelTimer;
 import io.github.wycst.wast.socket.util.Utils;
 
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class ChannelContext {
 
     final String id;
     final SocketChannel channel;
-    ScheduledExecutorService scheduledExecutorService;
+    HashedWheelTimer timer;
+    // read, decode and handle on the worker thread
+    boolean eventLoop;
+    // only used by a blocking read in event loop mode
+    Selector readSelector;
+    // written buffers: unflushed ones wait for flush(), flushed ones the socket could not accept yet are written by the worker when writable (OP_WRITE)
+    final ChannelOutboundBuffer outboundBuffer = new ChannelOutboundBuffer();
+    long writeHighWaterMark = Long.MAX_VALUE;
+    // waiting for OP_WRITE, guarded by outboundBuffer
+    boolean writeInterest;
+    // OP_READ cleared while a runner is reading the channel, guarded by outboundBuffer
+    boolean readSuspended;
     SelectionKey readKey;
+    // worker owning readKey, interest ops are only changed by its thread
+    TCPServer.ChannelReaderWorker worker;
+    // an interest ops update task is queued on the worker, guarded by outboundBuffer
+    boolean interestUpdateQueued;
+    private final Runnable interestUpdateTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (outboundBuffer) {
+                interestUpdateQueued = false;
+                updateInterestOps();
+            }
+        }
+    };
+    // thread running the runner of the channel (read, decode and handle), null between two runs
+    volatile Thread runnerThread;
+    // load of the worker the channel is registered on, guarded by outboundBuffer
+    WorkerLoad workerLoad;
+    // null if the metrics are disabled
+    ServerMetrics metrics;
     IdleStateHandlerTrigger idleStateHandlerTrigger;
     private ChannelHandler channelHandler;
 
     private Object attachment;
+    // per-connection state of the ChannelReader (such as the cumulation of ChannelFrameDecoder)
+    private Object decoderState;
 
     private Map<String, Object> attributes;
-    private Object lock = new Object();
+    // copy of a direct read buffer made by the decoders, reused by every read of the channel
+    private byte[] readScratch;
+    // j.u.c lock instead of a monitor: waiting in a monitor pins the carrier of a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    // set by wakeup() and consumed by awaitRead(), a wakeup before the wait is not lost
+    private boolean readPermit;
 
     public ChannelContext(SocketChannel channel) throws IOException {
         this.id = Utils.hex();
@@ -33,7 +83,10 @@ public class ChannelContext {
     public void close() {
         if (!isClosed()) {
             try {
-                readKey.cancel();
+                flushQuietly();
+                if (readKey != null) {
+                    readKey.cancel();
+                }
                 channel.close();
                 channelHandler.onClosed(this);
                 if (idleStateHandlerTrigger != null) {
@@ -42,9 +95,27 @@ public class ChannelContext {
             } catch (Throwable throwable) {
                 throwable.printStackTrace();
             } finally {
+                // a runner blocked in awaitRead sees the close
+                wakeup();
                 attachment = null;
-                if (scheduledExecutorService != null) {
-                    Utils.shutdownExecutorService(scheduledExecutorService);
+                decoderState = null;
+                readScratch = null;
+                synchronized (outboundBuffer) {
+                    outboundBuffer.clear();
+                    outboundBuffer.setWorkerLoad(null);
+                    if (workerLoad != null) {
+                        workerLoad.connections.decrementAndGet();
+                        workerLoad = null;
+                        if (metrics != null) {
+                            metrics.connectionClosed();
+                        }
+                    }
+                }
+                if (readSelector != null) {
+                    try {
+                        readSelector.close();
+                    } catch (IOException e) {
+                    }
                 }
             }
         }
@@ -61,15 +132,137 @@ public class ChannelContext {
         }
     }
 
+    /**
+     * <p> Called by the thread handling a read of the channel (ChannelHandler.onHandle), the buffer is only enqueued:
+     * the buffers written for a read buffer are flushed together (one gathering write) once the reader and the handler return. </p>
+     * <p> Called by any other thread (timers, idle handlers, pushes), the buffer is written immediately, as write(buf, true). </p>
+     *
+     * @param buf
+     * @return the bytes enqueued
+     * @throws IOException
+     * @see #write(ByteBuffer, boolean)
+     */
     public int write(ByteBuffer buf) throws IOException {
-        return channelWrite(buf);
+        return write(buf, Thread.currentThread() != runnerThread);
+    }
+
+    /**
+     * <p> Enqueue the buffer, and flush if flush is true. Without flush, call flush() to send the enqueued buffers with one gathering write. </p>
+     * <p> The buffer is not copied: it must not be modified until flush() returns (the bytes the socket did not accept are copied by flush). </p>
+     *
+     * @param buf
+     * @param flush
+     * @return the bytes enqueued
+     * @throws IOException
+     */
+    public int write(ByteBuffer buf, boolean flush) throws IOException {
+        int len = buf.remaining();
+        synchronized (outboundBuffer) {
+            outboundBuffer.addUnflushed(buf);
+        }
+        if (flush) {
+            flush();
+        }
+        return len;
+    }
+
+    /**
+     * <p> Write all the buffers enqueued by write(), gathered into as few syscalls as possible. </p>
+     * <p> Never blocks, bytes the socket cannot accept are copied (the written buffers can be reused once flush returns)
+     * and written by the worker when the channel is writable. </p>
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        try {
+            synchronized (outboundBuffer) {
+                if (!outboundBuffer.hasUnflushed()) return;
+                outboundBuffer.addFlush();
+                if (!writeInterest) {
+                    if (!outboundBuffer.writeTo(channel)) {
+                        setWriteInterest(true);
+                    }
+                }
+                // no-op if the socket accepted everything
+                outboundBuffer.detachBorrowed();
+            }
+        } finally {
+            if (idleStateHandlerTrigger != null) {
+                idleStateHandlerTrigger.onWriteTriggered();
+            }
+        }
+    }
+
+    /**
+     * <p> Send count bytes of the file from position after the buffers already written, then flush. </p>
+     * <p> Plaintext channels use FileChannel.transferTo (no copy into the java heap), the rest is sent when the channel is writable. </p>
+     * <p> The file must stay open until the bytes are sent (see getPendingWriteBytes), it is not closed by the channel. </p>
+     *
+     * @param file
+     * @param position
+     * @param count
+     * @return count
+     * @throws IOException
+     */
+    public long sendFile(FileChannel file, long position, long count) throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("position " + position + ", count " + count);
+        }
+        synchronized (outboundBuffer) {
+            outboundBuffer.addUnflushed(new FileRegion(file, position, count));
+        }
+        flush();
+        return count;
     }
 
+    /**
+     * write(buf) + flush()
+     *
+     * @param buf
+     * @return
+     * @throws IOException
+     */
+    public final int writeAndFlush(ByteBuffer buf) throws IOException {
+        return write(buf, true);
+    }
+
+    private void flushQuietly() {
+        try {
+            synchronized (outboundBuffer) {
+                outboundBuffer.addFlush();
+                outboundBuffer.writeTo(channel);
+            }
+        } catch (Throwable throwable) {
+        }
+    }
+
+    /**
+     * <p> Non-blocking immediate write (ahead of the unflushed buffers): writes directly when nothing flushed is pending, otherwise (or if the socket send buffer is full)
+     * the remaining bytes are copied to the outbound queue which is flushed by the worker when the channel is writable. </p>
+     * <p> Never blocks the caller, buf can be reused once this method returns. </p>
+     *
+     * @param buf
+     * @return the bytes accepted (written or queued)
+     * @throws IOException
+     */
     protected final int channelWrite(ByteBuffer buf) throws IOException {
         try {
             int len = buf.remaining();
-            while (buf.hasRemaining()) {
-                channel.write(buf);
+            synchronized (outboundBuffer) {
+                if (outboundBuffer.isEmpty()) {
+                    int written = channel.write(buf);
+                    if (metrics != null) {
+                        metrics.addWrite(written);
+                    }
+                    if (!buf.hasRemaining()) {
+                        return len;
+                    }
+                }
+                ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+                copy.put(buf);
+                ((Buffer) copy).flip();
+                outboundBuffer.addFlushed(copy);
+                setWriteInterest(true);
             }
             return len;
         } finally {
@@ -80,10 +273,117 @@ public class ChannelContext {
         }
     }
 
+    /**
+     * called by the worker when the channel is writable
+     *
+     * @throws IOException
+     */
+    final void flushOutbound() throws IOException {
+        synchronized (outboundBuffer) {
+            if (outboundBuffer.writeTo(channel)) {
+                setWriteInterest(false);
+            }
+        }
+    }
+
+    // call with the outboundBuffer lock
+    private void setWriteInterest(boolean writeInterest) {
+        this.writeInterest = writeInterest;
+        interestOpsChanged();
+    }
+
+    /**
+     * clear OP_READ while a runner is reading the channel (the selector is level-triggered and would report the key on every select),
+     * called by the worker thread
+     */
+    final void suspendRead() {
+        synchronized (outboundBuffer) {
+            if (!readSuspended) {
+                readSuspended = true;
+                interestOpsChanged();
+            }
+        }
+    }
+
+    /**
+     * re-arm OP_READ (through the worker task queue when called by another thread)
+     */
+    final void resumeRead() {
+        synchronized (outboundBuffer) {
+            if (readSuspended) {
+                readSuspended = false;
+                interestOpsChanged();
+            }
+        }
+    }
+
+    // call with the outboundBuffer lock
+    private void interestOpsChanged() {
+        if (readKey == null) {
+            // not registered yet, armed in setReadKey
+            return;
+        }
+        if (worker == null || worker.inEventLoop()) {
+            updateInterestOps();
+        } else if (!interestUpdateQueued) {
+            // coalesced: the queued task applies the latest state
+            interestUpdateQueued = true;
+            worker.execute(interestUpdateTask);
+        }
+    }
+
+    // call with the outboundBuffer lock on the worker thread
+    private void updateInterestOps() {
+        SelectionKey key = readKey;
+        try {
+            int ops = key.interestOps();
+            int newOps = (readSuspended ? 0 : SelectionKey.OP_READ) | (writeInterest ? SelectionKey.OP_WRITE : 0);
+            if (newOps != ops) {
+                key.interestOps(newOps);
+            }
+        } catch (CancelledKeyException e) {
+            // closed
+        }
+    }
+
+    /**
+     * bytes queued but not written to the socket yet
+     *
+     * @return
+     */
+    public final long getPendingWriteBytes() {
+        synchronized (outboundBuffer) {
+            return outboundBuffer.pendingBytes() + pendingPlaintextBytes();
+        }
+    }
+
+    /**
+     * bytes written but not encoded into the outbound queue yet
+     *
+     * @return
+     */
+    protected long pendingPlaintextBytes() {
+        return 0;
+    }
+
+    /**
+     * Whether the pending write bytes are below the configured high water mark (ChannelConfig.writeHighWaterMark),
+     * producers of slow consumers should check it before writing.
+     *
+     * @return
+     */
+    public final boolean isWritable() {
+        return getPendingWriteBytes() < writeHighWaterMark;
+    }
+
     protected final int channelRead(ByteBuffer buf) throws IOException {
         try {
             if (isClosed()) return -1;
-            return channel.read(buf);
+            int n = channel.read(buf);
+            if (n > 0 && metrics != null) {
+                metrics.addBytesRead(n);
+            }
+            return n;
         } finally {
             // Triggered as long as a read action is performed, regardless of whether data is read or not
             if (idleStateHandlerTrigger != null) {
@@ -132,19 +432,50 @@ public class ChannelContext {
         }
     }
 
-    protected void awaitRead() {
-        synchronized (lock) {
-            try {
-                lock.wait();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+    protected void awaitRead() throws IOException {
+        if (eventLoop) {
+            // the worker thread is the caller itself and cannot wake it up, wait on a private selector
+            awaitReadable();
+            return;
+        }
+        lock.lock();
+        try {
+            readPermit = false;
+        } finally {
+            lock.unlock();
+        }
+        // OP_READ is suspended while the runner is active, ask the worker for the next readiness
+        resumeRead();
+        lock.lock();
+        try {
+            while (!readPermit) {
+                readable.await();
             }
+            readPermit = false;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitReadable() throws IOException {
+        Selector selector = readSelector;
+        if (selector == null) {
+            readSelector = selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
         }
+        selector.select(1000);
+        selector.selectedKeys().clear();
     }
 
     protected void wakeup() {
-        synchronized (lock) {
-            lock.notifyAll();
+        lock.lock();
+        try {
+            readPermit = true;
+            readable.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -160,19 +491,35 @@ public class ChannelContext {
         return channel;
     }
 
+    void setEventLoop(boolean eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
     void setIdleTrigger(IdleStateHandler idleStateHandler) {
         idleStateHandlerTrigger = new IdleStateHandlerTrigger(idleStateHandler, this);
     }
 
+    /**
+     * <p> Schedule a delayed task on the timer shared by the server (hashed wheel, tick precision). </p>
+     * <p> The task runs on the timer thread, so it must not block. Refused once the channel is closed. </p>
+     *
+     * @param runnable
+     * @param delay
+     * @param timeUnit
+     * @return
+     */
     public final ScheduledFuture schedule(Runnable runnable, long delay, TimeUnit timeUnit) {
-        if (scheduledExecutorService == null) {
-            synchronized (this) {
-                if (scheduledExecutorService == null) {
-                    this.scheduledExecutorService = Executors.newScheduledThreadPool(100);
-                }
-            }
+        if (timer == null) {
+            throw new SocketException("channel is not bound to a timer");
+        }
+        if (isClosed()) {
+            throw new SocketException("channel is closed");
         }
-        return scheduledExecutorService.schedule(runnable, delay, timeUnit);
+        return timer.schedule(runnable, delay, timeUnit);
+    }
+
+    void setTimer(HashedWheelTimer timer) {
+        this.timer = timer;
     }
 
     public String getId() {
@@ -183,8 +530,52 @@ public class ChannelContext {
         this.channelHandler = channelHandler;
     }
 
+    void setWorker(TCPServer.ChannelReaderWorker worker) {
+        this.worker = worker;
+    }
+
     public void setReadKey(SelectionKey readKey) {
-        this.readKey = readKey;
+        synchronized (outboundBuffer) {
+            this.readKey = readKey;
+            if (!outboundBuffer.isEmpty()) {
+                setWriteInterest(true);
+            }
+        }
+    }
+
+    /**
+     * attach the load of the worker, the connection is already counted in it and is uncounted by close()
+     *
+     * @param workerLoad
+     * @return false if the channel is closed already (close() will not uncount the connection)
+     */
+    boolean setWorkerLoad(WorkerLoad workerLoad) {
+        synchronized (outboundBuffer) {
+            if (isClosed()) return false;
+            this.workerLoad = workerLoad;
+            outboundBuffer.setWorkerLoad(workerLoad);
+            if (metrics != null) {
+                metrics.connectionOpened();
+            }
+            return true;
+        }
+    }
+
+    void setMetrics(ServerMetrics metrics) {
+        synchronized (outboundBuffer) {
+            this.metrics = metrics;
+            outboundBuffer.setMetrics(metrics);
+        }
+    }
+
+    void setOutboundSpill(ChannelOutboundSpill spill, long spillThreshold) {
+        synchronized (outboundBuffer) {
+            outboundBuffer.setSpill(spill, spillThreshold);
+        }
+    }
+
+    void setWriteHighWaterMark(long writeHighWaterMark) {
+        this.writeHighWaterMark = writeHighWaterMark;
     }
 
     public Object attachment() {
@@ -195,6 +586,34 @@ public class ChannelContext {
         this.attachment = attachment;
     }
 
+    /**
+     * state kept by the decoder between two reads of this channel (the reader itself may be shared by all channels)
+     *
+     * @return
+     */
+    public Object decoderState() {
+        return decoderState;
+    }
+
+    public void decoderState(Object decoderState) {
+        this.decoderState = decoderState;
+    }
+
+    /**
+     * <p> Array of at least minLength bytes owned by the channel, decoders copy a direct read buffer into it instead of allocating an array per read. </p>
+     * <p> Only one runner reads a channel at a time, the content is overwritten by the next read. </p>
+     *
+     * @param minLength
+     * @return
+     */
+    public final byte[] readScratch(int minLength) {
+        byte[] scratch = readScratch;
+        if (scratch == null || scratch.length < minLength) {
+            readScratch = scratch = new byte[Math.max(minLength, 512)];
+        }
+        return scratch;
+    }
+
     public Object getAttribute(String key) {
         Map<String, Object> attributes = getAttributes();
         return attributes.get(key);
@@ -0,0 +1,308 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.buffer.ByteBufferAllocator;
+import io.github.wycst.wast.socket.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * <p> Outbound queue of a channel. </p>
+ * <p> Buffers written by ChannelContext.write stay unflushed until ChannelContext.flush moves them to the flushed queue,
+ * which is written to the socket with gathering writes (one syscall for many buffers). </p>
+ * <p> Entries are ByteBuffer or OutboundRegion (ChannelContext.sendFile), a region is sent with transferTo in queue order. </p>
+ * <p> Buffers added with an allocator (the records of SSLChannelContext.write) are owned by the queue and released once written. </p>
+ * <p> Other buffers are borrowed from the caller (zero copy), detachBorrowed copies the bytes the socket did not accept so that the caller can reuse them. </p>
+ * <p> With a spill (ChannelConfig.spillThreshold), buffers added while the in-memory pending bytes exceed the threshold
+ * are queued as views of memory-mapped file segments instead (see ChannelOutboundSpill). </p>
+ * <p> Not thread safe, the owner ChannelContext synchronizes on it. </p>
+ *
+ * @Date 2026/10/17
+ */
+final class ChannelOutboundBuffer {
+
+    // max buffers per gathering write (IOV_MAX is 1024 on linux)
+    static final int MAX_GATHER = 64;
+
+    private final ArrayDeque<Object> unflushed = new ArrayDeque<Object>();
+    private final ArrayDeque<Object> flushed = new ArrayDeque<Object>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private long pendingBytes;
+    // pending bytes are also accounted to the load of the worker of the channel
+    private WorkerLoad workerLoad;
+    private ChannelOutboundSpill spill;
+    private long spillThreshold = Long.MAX_VALUE;
+    // owned buffers in queue order, released to allocator when written
+    private final ArrayDeque<ByteBuffer> owned = new ArrayDeque<ByteBuffer>();
+    private ByteBufferAllocator allocator;
+    // buffers of the callers in queue order, copied by detachBorrowed if still queued
+    private final ArrayDeque<ByteBuffer> borrowed = new ArrayDeque<ByteBuffer>();
+    // bytes written to the socket, null if the metrics are disabled
+    private ServerMetrics metrics;
+
+    /**
+     * @return true if no flushed buffer is waiting for the socket
+     */
+    boolean isEmpty() {
+        return flushed.isEmpty();
+    }
+
+    boolean hasUnflushed() {
+        return !unflushed.isEmpty();
+    }
+
+    long pendingBytes() {
+        return pendingBytes;
+    }
+
+    void setWorkerLoad(WorkerLoad workerLoad) {
+        if (this.workerLoad != null) {
+            this.workerLoad.addPendingBytes(-pendingBytes);
+        }
+        this.workerLoad = workerLoad;
+        if (workerLoad != null) {
+            workerLoad.addPendingBytes(pendingBytes);
+        }
+    }
+
+    void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setSpill(ChannelOutboundSpill spill, long spillThreshold) {
+        this.spill = spill;
+        this.spillThreshold = spillThreshold;
+    }
+
+    private boolean spill(ByteBuffer buf, ArrayDeque<Object> queue) throws IOException {
+        if (spill == null) return false;
+        int len = buf.remaining();
+        if (pendingBytes - spill.pendingBytes() + len <= spillThreshold) return false;
+        spill.spill(buf, queue);
+        addPendingBytes(len);
+        return true;
+    }
+
+    private void addPendingBytes(long delta) {
+        pendingBytes += delta;
+        if (workerLoad != null) {
+            workerLoad.addPendingBytes(delta);
+        }
+    }
+
+    /**
+     * enqueue a buffer of the caller without flushing it, the caller must not modify it until it is written or detached
+     *
+     * @param buf
+     */
+    void addUnflushed(ByteBuffer buf) throws IOException {
+        int len = buf.remaining();
+        if (len > 0 && !spill(buf, unflushed)) {
+            unflushed.add(buf);
+            borrowed.add(buf);
+            addPendingBytes(len);
+        }
+    }
+
+    /**
+     * enqueue a buffer of the allocator without flushing it, the buffer is released to the allocator when written (or spilled, or cleared)
+     *
+     * @param buf
+     * @param allocator the same allocator for all the owned buffers of the queue
+     */
+    void addUnflushed(ByteBuffer buf, ByteBufferAllocator allocator) throws IOException {
+        int len = buf.remaining();
+        if (len == 0) {
+            allocator.release(buf);
+            return;
+        }
+        boolean spilled;
+        try {
+            spilled = spill(buf, unflushed);
+        } catch (IOException e) {
+            allocator.release(buf);
+            throw e;
+        } catch (RuntimeException e) {
+            allocator.release(buf);
+            throw e;
+        }
+        if (spilled) {
+            // copied into the spill
+            allocator.release(buf);
+        } else {
+            this.allocator = allocator;
+            unflushed.add(buf);
+            owned.add(buf);
+            addPendingBytes(len);
+        }
+    }
+
+    /**
+     * enqueue a region without flushing it, the region is released when written (or cleared)
+     *
+     * @param region
+     */
+    void addUnflushed(OutboundRegion region) {
+        if (region.remaining > 0) {
+            unflushed.add(region);
+            addPendingBytes(region.remaining);
+        } else {
+            region.release();
+        }
+    }
+
+    /**
+     * account the bytes appended to a region already queued
+     *
+     * @param count
+     */
+    void addRegionBytes(long count) {
+        addPendingBytes(count);
+    }
+
+    /**
+     * enqueue a buffer owned by the queue after the flushed ones
+     *
+     * @param buf
+     */
+    void addFlushed(ByteBuffer buf) throws IOException {
+        int len = buf.remaining();
+        if (len > 0 && !spill(buf, flushed)) {
+            flushed.add(buf);
+            addPendingBytes(len);
+        }
+    }
+
+    /**
+     * mark all the unflushed buffers as flushed
+     */
+    void addFlush() {
+        Object entry;
+        while ((entry = unflushed.poll()) != null) {
+            flushed.add(entry);
+        }
+    }
+
+    /**
+     * write the flushed buffers until the socket send buffer is full
+     *
+     * @param channel
+     * @return true if the flushed queue is drained
+     * @throws IOException
+     */
+    boolean writeTo(SocketChannel channel) throws IOException {
+        Object head;
+        while ((head = flushed.peek()) != null) {
+            if (head instanceof OutboundRegion) {
+                OutboundRegion region = (OutboundRegion) head;
+                long remaining = region.remaining;
+                long transferred = region.transferTo(channel);
+                // a TLS region also grows by the records it wraps
+                addPendingBytes(region.remaining - remaining);
+                if (metrics != null) {
+                    metrics.addWrite(transferred);
+                }
+                if (!region.isDone()) {
+                    return false;
+                }
+                flushed.poll();
+                region.release();
+                continue;
+            }
+            // gather the buffers up to the next file region
+            int count = 0;
+            long expected = 0;
+            Iterator<Object> iterator = flushed.iterator();
+            while (count < MAX_GATHER && iterator.hasNext()) {
+                Object entry = iterator.next();
+                if (!(entry instanceof ByteBuffer)) break;
+                ByteBuffer buf = (ByteBuffer) entry;
+                expected += buf.remaining();
+                gather[count++] = buf;
+            }
+            long written;
+            if (count == 1) {
+                gather[0] = null;
+                written = channel.write((ByteBuffer) head);
+            } else {
+                try {
+                    written = channel.write(gather, 0, count);
+                } finally {
+                    for (int i = 0; i < count; ++i) {
+                        gather[i] = null;
+                    }
+                }
+            }
+            addPendingBytes(-written);
+            if (metrics != null) {
+                metrics.addWrite(written);
+            }
+            while ((head = flushed.peek()) instanceof ByteBuffer && !((ByteBuffer) head).hasRemaining()) {
+                flushed.poll();
+                if (spill != null && spill.isNext((ByteBuffer) head)) {
+                    spill.written();
+                } else if (owned.peek() == head) {
+                    allocator.release(owned.poll());
+                } else if (borrowed.peek() == head) {
+                    borrowed.poll();
+                }
+            }
+            if (written < expected) {
+                // the socket send buffer is full
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * copy the remaining bytes of the caller buffers still queued (the socket did not accept them), the callers can reuse their buffers from now on
+     */
+    void detachBorrowed() {
+        if (borrowed.isEmpty()) return;
+        detach(flushed);
+        detach(unflushed);
+    }
+
+    private static void release(ArrayDeque<Object> queue) {
+        Object entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry instanceof OutboundRegion) {
+                ((OutboundRegion) entry).release();
+            }
+        }
+    }
+
+    private void detach(ArrayDeque<Object> queue) {
+        // one full rotation keeps the queue order
+        for (int i = 0, n = queue.size(); i < n; ++i) {
+            Object entry = queue.poll();
+            if (entry == borrowed.peek()) {
+                ByteBuffer buf = borrowed.poll();
+                ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+                copy.put(buf);
+                ((Buffer) copy).flip();
+                entry = copy;
+            }
+            queue.add(entry);
+        }
+    }
+
+    void clear() {
+        release(flushed);
+        release(unflushed);
+        borrowed.clear();
+        ByteBuffer buf;
+        while ((buf = owned.poll()) != null) {
+            allocator.release(buf);
+        }
+        if (spill != null) {
+            spill.close();
+        }
+        addPendingBytes(-pendingBytes);
+    }
+}
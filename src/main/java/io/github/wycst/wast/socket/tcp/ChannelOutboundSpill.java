@@ -0,0 +1,199 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.env.RuntimeAdapter;
+import io.github.wycst.wast.socket.exception.SocketException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Disk overflow of an outbound queue: bytes beyond the spill threshold are copied into memory-mapped segments of a temporary file
+ * and queued as views of the mapping, so they leave the java heap and can be paged out by the os. </p>
+ * <p> Segments are unmapped as soon as their bytes are written to the socket and their file offsets are reused,
+ * the file is deleted when the channel is closed. </p>
+ * <p> Not thread safe, used under the lock of the owner ChannelOutboundBuffer. </p>
+ *
+ * @Date 2026/10/17
+ */
+final class ChannelOutboundSpill {
+
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    final File directory;
+    final long maxBytes;
+    // mapped bytes of all the channels of the server
+    final AtomicLong globalBytes;
+    final long globalMaxBytes;
+
+    private File path;
+    private RandomAccessFile file;
+    private FileChannel fileChannel;
+    private long fileLength;
+    private final ArrayDeque<Long> freeOffsets = new ArrayDeque<Long>();
+    // mapped segments in queue order, the views of the head segment are written first
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    // queued views in queue order
+    private final ArrayDeque<ByteBuffer> views = new ArrayDeque<ByteBuffer>();
+    private long pendingBytes;
+
+    ChannelOutboundSpill(File directory, long maxBytes, AtomicLong globalBytes, long globalMaxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.globalBytes = globalBytes;
+        this.globalMaxBytes = globalMaxBytes;
+    }
+
+    /**
+     * spilled bytes not written to the socket yet
+     *
+     * @return
+     */
+    long pendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * copy the remaining bytes of buf into the mapped segments and add their views to the queue
+     *
+     * @param buf
+     * @param queue
+     * @throws SocketException if the per channel or the global disk cap would be exceeded (nothing is queued)
+     * @throws IOException
+     */
+    void spill(ByteBuffer buf, ArrayDeque<Object> queue) throws IOException {
+        int len = buf.remaining();
+        Segment tail = segments.peekLast();
+        int tailFree = tail == null ? 0 : SEGMENT_SIZE - tail.position;
+        int newSegments = len > tailFree ? (len - tailFree + SEGMENT_SIZE - 1) / SEGMENT_SIZE : 0;
+        if (newSegments > 0) {
+            long newBytes = (long) newSegments * SEGMENT_SIZE;
+            if ((long) segments.size() * SEGMENT_SIZE + newBytes > maxBytes) {
+                throw new SocketException("outbound spill exceeds the per channel limit " + maxBytes);
+            }
+            if (globalBytes.addAndGet(newBytes) > globalMaxBytes) {
+                globalBytes.addAndGet(-newBytes);
+                throw new SocketException("outbound spill exceeds the global limit " + globalMaxBytes);
+            }
+            try {
+                for (int i = 0; i < newSegments; ++i) {
+                    segments.add(map());
+                }
+            } catch (IOException e) {
+                globalBytes.addAndGet(-newBytes);
+                throw e;
+            }
+        }
+        int limit = buf.limit();
+        for (Segment segment : segments) {
+            if (!buf.hasRemaining()) break;
+            int n = Math.min(buf.remaining(), SEGMENT_SIZE - segment.position);
+            if (n == 0) continue;
+            ByteBuffer view = segment.buffer.duplicate();
+            ((Buffer) view).limit(segment.position + n);
+            ((Buffer) view).position(segment.position);
+            view = view.slice();
+            ((Buffer) buf).limit(buf.position() + n);
+            view.put(buf);
+            ((Buffer) buf).limit(limit);
+            ((Buffer) view).flip();
+            segment.position += n;
+            queue.add(view);
+            views.add(view);
+        }
+        pendingBytes += len;
+    }
+
+    /**
+     * whether buf is the next spilled view of the queue
+     *
+     * @param buf
+     * @return
+     */
+    boolean isNext(ByteBuffer buf) {
+        return views.peek() == buf;
+    }
+
+    /**
+     * the next view is written, unmap its segment once all the views of the segment are written
+     */
+    void written() {
+        ByteBuffer view = views.poll();
+        Segment head = segments.peek();
+        head.written += view.capacity();
+        pendingBytes -= view.capacity();
+        if (head.written == head.position) {
+            // the head segment is drained (a partially filled tail segment is released too, the next spill maps a new one)
+            segments.poll();
+            release(head);
+        }
+    }
+
+    private Segment map() throws IOException {
+        if (fileChannel == null) {
+            File dir = directory == null ? new File(System.getProperty("java.io.tmpdir")) : directory;
+            path = File.createTempFile("wast-socket-spill-", ".tmp", dir);
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+            fileChannel = file.getChannel();
+        }
+        Long offset = freeOffsets.poll();
+        long position;
+        if (offset != null) {
+            position = offset;
+        } else {
+            position = fileLength;
+            fileLength += SEGMENT_SIZE;
+        }
+        return new Segment(position, fileChannel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+    }
+
+    private void release(Segment segment) {
+        RuntimeAdapter.INSTANCE.releaseDirectBuffer(segment.buffer);
+        freeOffsets.add(segment.offset);
+        globalBytes.addAndGet(-SEGMENT_SIZE);
+    }
+
+    /**
+     * unmap all the segments and delete the file
+     */
+    void close() {
+        Segment segment;
+        while ((segment = segments.poll()) != null) {
+            release(segment);
+        }
+        views.clear();
+        freeOffsets.clear();
+        pendingBytes = 0;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+            }
+            path.delete();
+            file = null;
+            fileChannel = null;
+            fileLength = 0;
+        }
+    }
+
+    static final class Segment {
+        final long offset;
+        final MappedByteBuffer buffer;
+        // bytes copied into the segment
+        int position;
+        // bytes of the segment written to the socket
+        int written;
+
+        Segment(long offset, MappedByteBuffer buffer) {
+            this.offset = offset;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.codec.ChannelWriter;
+import io.github.wycst.wast.socket.exception.SocketException;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Outbound connection of a TCPClient. </p>
+ * <p> Requests are pipelined: request() encodes and writes the message without waiting for the responses of the previous requests,
+ * each decoded message completes the oldest pending request (the peer answers every request, in order). </p>
+ * <p> Messages received while no request is pending are handed to the ChannelHandler of the client (if any). </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ClientChannelContext extends ChannelContext {
+
+    /**
+     * handler of all the client runners, dispatches to the context
+     */
+    static final ChannelHandler<Object> CLIENT_CHANNEL_HANDLER = new ChannelHandler<Object>() {
+        @Override
+        public void onConnected(ChannelContext channelContext) throws IOException {
+            ClientChannelContext clientChannelContext = (ClientChannelContext) channelContext;
+            if (clientChannelContext.channelHandler != null) {
+                clientChannelContext.channelHandler.onConnected(channelContext);
+            }
+        }
+
+        @Override
+        public void onHandle(ChannelContext channelContext, Object message) throws IOException {
+            ((ClientChannelContext) channelContext).received(message);
+        }
+
+        @Override
+        public void onClosed(ChannelContext channelContext) throws IOException {
+            ((ClientChannelContext) channelContext).closed();
+        }
+
+        @Override
+        public void onException(ChannelContext channelContext, Throwable cause) throws IOException {
+            ClientChannelContext clientChannelContext = (ClientChannelContext) channelContext;
+            if (clientChannelContext.channelHandler != null) {
+                clientChannelContext.channelHandler.onException(channelContext, cause);
+            }
+        }
+    };
+
+    private final ChannelWriter channelWriter;
+    // handler of the messages no request waits for, may be null
+    private final ChannelHandler channelHandler;
+    // requests written and not answered, in write order
+    private final Queue<CompletableFuture<Object>> pendingRequests = new ConcurrentLinkedQueue<CompletableFuture<Object>>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // a request is queued and written atomically, the write order is the response order
+    private final Object requestLock = new Object();
+
+    ClientChannelContext(SocketChannel channel, ChannelWriter channelWriter, ChannelHandler channelHandler) throws IOException {
+        super(channel);
+        this.channelWriter = channelWriter;
+        this.channelHandler = channelHandler;
+    }
+
+    /**
+     * request(message, true)
+     *
+     * @param message
+     * @return
+     * @throws IOException
+     */
+    public final <R> CompletableFuture<R> request(Object message) throws IOException {
+        return request(message, true);
+    }
+
+    /**
+     * <p> Encode the message with the ChannelWriter of the client and write it, the future is completed by the next unclaimed response. </p>
+     * <p> With flush false the request is only enqueued (flush() sends the batch with one gathering write). </p>
+     * <p> The future is completed by the thread reading the channel (the worker thread in EVENT_LOOP mode), dependent actions must not block.
+     * It fails with ClosedChannelException if the channel is closed before the response. </p>
+     *
+     * @param message
+     * @param flush
+     * @return future of the decoded response
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public final <R> CompletableFuture<R> request(Object message, boolean flush) throws IOException {
+        ByteBuffer buf = encode(message);
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        synchronized (requestLock) {
+            if (isClosed()) {
+                throw new ClosedChannelException();
+            }
+            // queued before the write: another thread's flush may send the request at once
+            pendingRequests.add(future);
+            pendingCount.incrementAndGet();
+            try {
+                write(buf, false);
+            } catch (IOException e) {
+                unqueue(future);
+                throw e;
+            } catch (RuntimeException e) {
+                unqueue(future);
+                throw e;
+            }
+        }
+        if (flush) {
+            flush();
+        }
+        return (CompletableFuture<R>) future;
+    }
+
+    // the request was not written, no response will claim its future
+    private void unqueue(CompletableFuture<Object> future) {
+        if (pendingRequests.remove(future)) {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * write and flush a message no response is expected for
+     *
+     * @param message
+     * @throws IOException
+     */
+    public final void send(Object message) throws IOException {
+        ByteBuffer buf = encode(message);
+        synchronized (requestLock) {
+            write(buf, false);
+        }
+        flush();
+    }
+
+    /**
+     * @return requests written and not answered yet
+     */
+    public final int getPendingRequests() {
+        return pendingCount.get();
+    }
+
+    private ByteBuffer encode(Object message) throws IOException {
+        if (channelWriter == null) {
+            throw new SocketException("channel writer not set");
+        }
+        return channelWriter.write(message);
+    }
+
+    void received(Object message) throws IOException {
+        CompletableFuture<Object> future = pendingRequests.poll();
+        if (future != null) {
+            pendingCount.decrementAndGet();
+            future.complete(message);
+        } else if (channelHandler != null) {
+            channelHandler.onHandle(this, message);
+        }
+    }
+
+    void closed() throws IOException {
+        try {
+            // the channel is closed: requests acquiring the lock from now on fail
+            synchronized (requestLock) {
+                CompletableFuture<Object> future;
+                while ((future = pendingRequests.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    future.completeExceptionally(new ClosedChannelException());
+                }
+            }
+        } finally {
+            if (channelHandler != null) {
+                channelHandler.onClosed(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.exception.SocketException;
+
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * <p> Warm connections of a TCPClient to one address, shared by any number of callers. </p>
+ * <p> Each connection pipelines at most maxPendingRequests requests. Checkout is lock-free: a round-robin scan reserves an in-flight permit
+ * of a connection with a CAS. Closed connections are skipped and reconnected, connections above their write high water mark are skipped. </p>
+ * <p> When every connection is at its bound the request waits in a FIFO queue (at most maxWaiters) and is sent as soon as a response frees a permit. </p>
+ * <p> Connections without any request for idleTime are closed by a sweep on the client timer, minIdle connections are kept. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ClientChannelPool {
+
+    // permits of a slot being evicted
+    static final int EVICTING = -1;
+    // period of the idle sweep (precision of idleTime)
+    static final long SWEEP_PERIOD_MILLIS = 1000;
+
+    final TCPClient client;
+    final SocketAddress address;
+    final Slot[] slots;
+    final int maxPendingRequests;
+    private long idleTimeNanos = TimeUnit.SECONDS.toNanos(60);
+    private int minIdle;
+    private int maxWaiters = 1024;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private final Runnable sweepTask = new Runnable() {
+        @Override
+        public void run() {
+            sweep();
+        }
+    };
+    private volatile ScheduledFuture sweepFuture;
+    volatile boolean closed;
+
+    /**
+     * @param client             started client
+     * @param address            remote address
+     * @param maxConnections     min 1
+     * @param maxPendingRequests requests in flight per connection, min 1
+     */
+    public ClientChannelPool(TCPClient client, SocketAddress address, int maxConnections, int maxPendingRequests) {
+        client.getClass();
+        address.getClass();
+        this.client = client;
+        this.address = address;
+        this.slots = new Slot[Math.max(maxConnections, 1)];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new Slot();
+        }
+        this.maxPendingRequests = Math.max(maxPendingRequests, 1);
+        scheduleSweep();
+    }
+
+    /**
+     * close the connections without any request for idleTime (default 60s)
+     *
+     * @param idleTime <= 0 never closes idle connections
+     * @param timeUnit
+     */
+    public ClientChannelPool idleTime(long idleTime, TimeUnit timeUnit) {
+        this.idleTimeNanos = idleTime > 0 ? timeUnit.toNanos(idleTime) : 0;
+        return this;
+    }
+
+    /**
+     * connections kept open when idle (see warmUp)
+     *
+     * @param minIdle
+     */
+    public ClientChannelPool minIdle(int minIdle) {
+        this.minIdle = Math.min(Math.max(minIdle, 0), slots.length);
+        return this;
+    }
+
+    /**
+     * requests waiting for a permit when all the connections are at their bound (default 1024), a request beyond fails with a SocketException
+     *
+     * @param maxWaiters
+     */
+    public ClientChannelPool maxWaiters(int maxWaiters) {
+        this.maxWaiters = Math.max(maxWaiters, 0);
+        return this;
+    }
+
+    /**
+     * open minIdle connections
+     *
+     * @return completed when they are connected
+     */
+    public CompletableFuture<Void> warmUp() {
+        CompletableFuture[] connections = new CompletableFuture[minIdle];
+        for (int i = 0; i < minIdle; ++i) {
+            connections[i] = slots[i].connection();
+        }
+        return CompletableFuture.allOf(connections);
+    }
+
+    /**
+     * <p> Send the request on a connection of the pool (see ClientChannelContext.request). </p>
+     * <p> The future fails with the connect error, with ClosedChannelException if the connection closes before the response,
+     * or with a SocketException if the pool is closed or too many requests are waiting. </p>
+     *
+     * @param message
+     * @return future of the response
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> request(Object message) {
+        CompletableFuture<Object> result = new CompletableFuture<Object>();
+        if (closed) {
+            result.completeExceptionally(new SocketException("pool is closed"));
+        } else {
+            Slot slot = checkout();
+            if (slot != null) {
+                send(slot, message, result);
+            } else if (waiterCount.incrementAndGet() > maxWaiters) {
+                waiterCount.decrementAndGet();
+                result.completeExceptionally(new SocketException("too many pending requests to " + address));
+            } else {
+                waiters.add(new Waiter(message, result));
+                // a permit released before the add
+                drainWaiters();
+            }
+        }
+        return (CompletableFuture<R>) result;
+    }
+
+    /**
+     * reserve a permit of a live connection, then of an empty (or closed) slot which is connected
+     *
+     * @return null if all the connections are at their bound
+     */
+    Slot checkout() {
+        int n = slots.length, start = next.getAndIncrement() & Integer.MAX_VALUE;
+        Slot vacant = null;
+        for (int i = 0; i < n; ++i) {
+            Slot slot = slots[(start + i) % n];
+            CompletableFuture<ClientChannelContext> connection = slot.connection.get();
+            if (connection == null || isBroken(connection)) {
+                if (vacant == null) {
+                    vacant = slot;
+                }
+                continue;
+            }
+            if (connection.isDone() && !connection.getNow(null).isWritable()) {
+                // slow consumer
+                continue;
+            }
+            if (slot.tryAcquire(maxPendingRequests)) {
+                return slot;
+            }
+        }
+        if (vacant != null && vacant.tryAcquire(maxPendingRequests)) {
+            return vacant;
+        }
+        return null;
+    }
+
+    static boolean isBroken(CompletableFuture<ClientChannelContext> connection) {
+        return connection.isCompletedExceptionally() || (connection.isDone() && connection.getNow(null).isClosed());
+    }
+
+    /**
+     * send on the slot whose permit is held, the permit is released with the response
+     */
+    void send(final Slot slot, final Object message, final CompletableFuture<Object> result) {
+        slot.connection().whenComplete(new BiConsumer<ClientChannelContext, Throwable>() {
+            @Override
+            public void accept(ClientChannelContext channelContext, Throwable throwable) {
+                if (throwable != null) {
+                    complete(slot, result, null, throwable);
+                    return;
+                }
+                try {
+                    channelContext.request(message).whenComplete(new BiConsumer<Object, Throwable>() {
+                        @Override
+                        public void accept(Object response, Throwable throwable) {
+                            complete(slot, result, response, throwable);
+                        }
+                    });
+                } catch (Throwable e) {
+                    complete(slot, result, null, e);
+                }
+            }
+        });
+    }
+
+    void complete(Slot slot, CompletableFuture<Object> result, Object response, Throwable throwable) {
+        slot.release();
+        if (throwable != null) {
+            result.completeExceptionally(throwable);
+        } else {
+            result.complete(response);
+        }
+        drainWaiters();
+    }
+
+    void drainWaiters() {
+        while (!waiters.isEmpty()) {
+            Slot slot = checkout();
+            if (slot == null) return;
+            Waiter waiter = waiters.poll();
+            if (waiter == null) {
+                slot.release();
+                return;
+            }
+            waiterCount.decrementAndGet();
+            if (closed) {
+                slot.release();
+                waiter.result.completeExceptionally(new SocketException("pool is closed"));
+            } else {
+                send(slot, waiter.message, waiter.result);
+            }
+        }
+    }
+
+    private void scheduleSweep() {
+        if (!closed) {
+            try {
+                sweepFuture = client.schedule(sweepTask, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (SocketException e) {
+                // client shut down
+            }
+        }
+    }
+
+    /**
+     * close the idle connections, run on the timer thread
+     */
+    void sweep() {
+        long idleTimeNanos = this.idleTimeNanos;
+        try {
+            if (closed) return;
+            List<Slot> live = new ArrayList<Slot>(slots.length);
+            for (Slot slot : slots) {
+                CompletableFuture<ClientChannelContext> connection = slot.connection.get();
+                if (connection == null) continue;
+                if (isBroken(connection)) {
+                    // free the slot, the next checkout reconnects it
+                    slot.connection.compareAndSet(connection, null);
+                } else if (connection.isDone()) {
+                    live.add(slot);
+                }
+            }
+            if (idleTimeNanos <= 0) return;
+            long now = System.nanoTime();
+            int evictable = live.size() - minIdle;
+            for (Slot slot : live) {
+                if (evictable > 0 && now - slot.lastActiveNanos >= idleTimeNanos && slot.evict()) {
+                    --evictable;
+                }
+            }
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+        } finally {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * @return open (or connecting) connections
+     */
+    public int getConnections() {
+        int count = 0;
+        for (Slot slot : slots) {
+            CompletableFuture<ClientChannelContext> connection = slot.connection.get();
+            if (connection != null && !isBroken(connection)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return requests in flight on the connections of the pool
+     */
+    public int getPendingRequests() {
+        int count = 0;
+        for (Slot slot : slots) {
+            count += Math.max(slot.permits.get(), 0);
+        }
+        return count;
+    }
+
+    /**
+     * @return requests waiting for a permit
+     */
+    public int getWaiters() {
+        return waiterCount.get();
+    }
+
+    /**
+     * close the connections (their pending requests fail) and fail the waiting requests
+     */
+    public void close() {
+        closed = true;
+        if (sweepFuture != null) {
+            sweepFuture.cancel(false);
+        }
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiterCount.decrementAndGet();
+            waiter.result.completeExceptionally(new SocketException("pool is closed"));
+        }
+        for (Slot slot : slots) {
+            CompletableFuture<ClientChannelContext> connection = slot.connection.getAndSet(null);
+            if (connection != null) {
+                connection.whenComplete(new BiConsumer<ClientChannelContext, Throwable>() {
+                    @Override
+                    public void accept(ClientChannelContext channelContext, Throwable throwable) {
+                        if (channelContext != null) {
+                            channelContext.close();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    final class Slot {
+        // connecting or connected, null if empty
+        final AtomicReference<CompletableFuture<ClientChannelContext>> connection = new AtomicReference<CompletableFuture<ClientChannelContext>>();
+        // requests in flight, EVICTING while the connection is closed by the sweep
+        final AtomicInteger permits = new AtomicInteger();
+        volatile long lastActiveNanos = System.nanoTime();
+
+        boolean tryAcquire(int max) {
+            int p;
+            do {
+                p = permits.get();
+                if (p < 0 || p >= max) return false;
+            } while (!permits.compareAndSet(p, p + 1));
+            lastActiveNanos = System.nanoTime();
+            return true;
+        }
+
+        void release() {
+            lastActiveNanos = System.nanoTime();
+            permits.decrementAndGet();
+        }
+
+        /**
+         * the live connection, or a new one replacing an empty or closed slot
+         */
+        CompletableFuture<ClientChannelContext> connection() {
+            while (true) {
+                CompletableFuture<ClientChannelContext> current = connection.get();
+                if (current != null && !isBroken(current)) {
+                    return current;
+                }
+                final CompletableFuture<ClientChannelContext> connecting = new CompletableFuture<ClientChannelContext>();
+                if (connection.compareAndSet(current, connecting)) {
+                    if (closed) {
+                        connecting.completeExceptionally(new ClosedChannelException());
+                        return connecting;
+                    }
+                    CompletableFuture<ClientChannelContext> connect;
+                    try {
+                        connect = client.connect(address);
+                    } catch (Throwable throwable) {
+                        // client shut down
+                        connecting.completeExceptionally(throwable);
+                        return connecting;
+                    }
+                    connect.whenComplete(new BiConsumer<ClientChannelContext, Throwable>() {
+                        @Override
+                        public void accept(ClientChannelContext channelContext, Throwable throwable) {
+                            if (throwable != null) {
+                                connecting.completeExceptionally(throwable);
+                            } else if (closed) {
+                                channelContext.close();
+                                connecting.completeExceptionally(new ClosedChannelException());
+                            } else {
+                                connecting.complete(channelContext);
+                            }
+                        }
+                    });
+                    return connecting;
+                }
+            }
+        }
+
+        /**
+         * close the connection if no request is in flight
+         */
+        boolean evict() {
+            if (!permits.compareAndSet(0, EVICTING)) return false;
+            try {
+                CompletableFuture<ClientChannelContext> current = connection.getAndSet(null);
+                if (current != null && current.isDone() && !current.isCompletedExceptionally()) {
+                    current.getNow(null).close();
+                }
+                return true;
+            } finally {
+                permits.set(0);
+            }
+        }
+    }
+
+    static final class Waiter {
+        final Object message;
+        final CompletableFuture<Object> result;
+
+        Waiter(Object message, CompletableFuture<Object> result) {
+            this.message = message;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.wycst.wast.socket.tcp;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p> Part of a file queued in the outbound buffer by ChannelContext.sendFile, sent with FileChannel.transferTo (sendfile on linux). </p>
+ * <p> The file channel is owned by the caller. </p>
+ *
+ * @Date 2026/10/17
+ */
+final class FileRegion extends OutboundRegion {
+
+    final FileChannel file;
+    long position;
+
+    FileRegion(FileChannel file, long position, long count) {
+        this.file = file;
+        this.position = position;
+        this.remaining = count;
+    }
+
+    /**
+     * @param channel
+     * @return bytes transferred (0 if the socket send buffer is full)
+     * @throws IOException
+     */
+    @Override
+    long transferTo(SocketChannel channel) throws IOException {
+        long n = file.transferTo(position, remaining, channel);
+        if (n > 0) {
+            position += n;
+            remaining -= n;
+        } else if (position >= file.size()) {
+            // would be retried forever on OP_WRITE
+            throw new IOException("file truncated, " + remaining + " bytes missing at " + position);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.wycst.wast.socket.tcp;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p> Entry of the outbound queue producing its bytes when it is written (FileRegion, the TLS regions of SSLChannelContext.sendFile). </p>
+ * <p> remaining is the bytes the region still holds, accounted as pending bytes by ChannelOutboundBuffer. </p>
+ *
+ * @Date 2026/10/17
+ */
+abstract class OutboundRegion {
+
+    long remaining;
+
+    /**
+     * write to the channel until the socket send buffer is full or the region is done
+     *
+     * @param channel
+     * @return bytes written to the socket
+     * @throws IOException
+     */
+    abstract long transferTo(SocketChannel channel) throws IOException;
+
+    /**
+     * give back the buffers held by the region (written or cleared)
+     */
+    void release() {
+    }
+
+    final boolean isDone() {
+        return remaining == 0;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.wycst.wast.socket.tcp;
+
+/**
+ * How a readiness event of a channel is executed
+ *
+ * @Date 2026/10/17
+ */
+public enum RunMode {
+
+    /**
+     * The worker (selector) thread hands the channel to a runner executed on the server executor (default).
+     * <p> Suitable for blocking decoders (ChannelContext.read) and slow handlers.
+     */
+    EXECUTOR,
+
+    /**
+     * The worker thread reads, decodes and calls ChannelHandler.onHandle inline (event loop), no thread handoff.
+     * <p> Suitable for small request/response protocols, the decoder and the handler must not block:
+     * a blocking read (ChannelContext.read) or a slow handler stalls all the channels of the worker.
+     */
+    EVENT_LOOP,
+
+    /**
+     * Like EXECUTOR, but each runner is executed on a virtual thread (JDK21+), so blocking decoders
+     * (ChannelContext.read / awaitRead) scale to a large number of connections without exhausting platform threads.
+     * <p> Falls back to EXECUTOR on JDK versions without virtual threads.
+     */
+    VIRTUAL_THREAD
+}
@@ -0,0 +1,99 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.env.RuntimeAdapter;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p> Array-backed replacement of the selected-key HashSet of a JDK selector. </p>
+ * <p> Adding a key is an array store, the owner thread iterates keys[0, size) by index and calls reset() after each select,
+ * so no iterator and no HashMap node is allocated per selection. </p>
+ * <p> contains/remove always return false (the JDK only uses them for keys it reports twice or cancels,
+ * a cancelled key is skipped by its isValid() check). </p>
+ *
+ * @Date 2026/10/17
+ */
+final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+    SelectionKey[] keys = new SelectionKey[1024];
+    int size;
+
+    /**
+     * install a new key set into the selector
+     *
+     * @param selector
+     * @return null if the selector implementation cannot be patched (use selector.selectedKeys() instead)
+     */
+    static SelectedSelectionKeySet install(Selector selector) {
+        SelectedSelectionKeySet selectedKeySet = new SelectedSelectionKeySet();
+        return RuntimeAdapter.INSTANCE.setSelectedKeys(selector, selectedKeySet) ? selectedKeySet : null;
+    }
+
+    @Override
+    public boolean add(SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+        if (size == keys.length) {
+            SelectionKey[] newKeys = new SelectionKey[size << 1];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            keys = newKeys;
+        }
+        keys[size++] = key;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public SelectionKey next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * clear the keys (release the references for the gc)
+     */
+    void reset() {
+        for (int i = 0; i < size; ++i) {
+            keys[i] = null;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,409 @@
+package io.github.wycst.wast.socket.tcp;
+
+import io.github.wycst.wast.socket.buffer.ByteBufferAllocator;
+import io.github.wycst.wast.socket.codec.ChannelReader;
+import io.github.wycst.wast.socket.codec.ChannelWriter;
+import io.github.wycst.wast.socket.env.RuntimeAdapter;
+import io.github.wycst.wast.socket.exception.SocketException;
+import io.github.wycst.wast.socket.factory.ChannelHandlerFactory;
+import io.github.wycst.wast.socket.factory.ChannelReaderFactory;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.handler.IdleStateHandler;
+import io.github.wycst.wast.socket.log.ConsoleLog;
+import io.github.wycst.wast.socket.util.HashedWheelTimer;
+import io.github.wycst.wast.socket.util.Utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * <p> NIO TCP client: the outbound connections share a few worker (selector) threads, the same workers, runners, ChannelReader and
+ * ChannelHandler as TCPServer. </p>
+ * <p> connect() is asynchronous (OP_CONNECT on a worker, connect timeout on the timer), ClientChannelContext.request pipelines the requests
+ * encoded by the ChannelWriter, the responses decoded by the ChannelReader complete them in order. </p>
+ * <p> Requests need a framing ChannelReader (a codec), with the default UNDO reader the read buffers are not messages. </p>
+ * <p> The default run mode is EVENT_LOOP (decode and complete on the worker thread), plaintext connections only. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class TCPClient {
+
+    public static final ConsoleLog CONSOLE_LOG = ConsoleLog.getLog(TCPClient.class);
+    // worker threads and runners (EXECUTOR mode)
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private ExecutorService runnerExecutorService = executorService;
+    private ExecutorService virtualThreadExecutorService;
+    // connect timeouts, idle detection and ChannelContext.schedule
+    private final HashedWheelTimer timer = new HashedWheelTimer("wast-socket-client-timer");
+    private final ChannelConfig channelConfig = new ChannelConfig();
+    private ChannelHandlerFactory channelHandlerFactory;
+    private ChannelWriter channelWriter;
+    private int workerNum = 1;
+    private WorkerChooser workerChooser = WorkerChooser.ROUND_ROBIN;
+    private long connectTimeoutMillis = 10000;
+    private boolean tcpNoDelay = true;
+
+    volatile boolean running;
+    boolean shutdowned;
+    private TCPServer.ChannelReaderWorker[] workers = new TCPServer.ChannelReaderWorker[0];
+    private WorkerLoad[] workerLoads = new WorkerLoad[0];
+
+    public TCPClient() {
+        channelConfig.setRunMode(RunMode.EVENT_LOOP);
+    }
+
+    /**
+     * selector threads shared by all the connections, min 1
+     *
+     * @param workerNum
+     */
+    public TCPClient workerNum(int workerNum) {
+        this.workerNum = Math.max(workerNum, 1);
+        return this;
+    }
+
+    /**
+     * <p> Strategy choosing the worker of each new connection (default round-robin). </p>
+     *
+     * @param workerChooser
+     */
+    public TCPClient workerChooser(WorkerChooser workerChooser) {
+        workerChooser.getClass();
+        this.workerChooser = workerChooser;
+        return this;
+    }
+
+    /**
+     * load of each worker (empty before start)
+     *
+     * @return
+     */
+    public WorkerLoad[] getWorkerLoads() {
+        return workerLoads.clone();
+    }
+
+    /**
+     * @param timeout  <= 0 waits for the os connect timeout
+     * @param timeUnit
+     */
+    public TCPClient connectTimeout(long timeout, TimeUnit timeUnit) {
+        this.connectTimeoutMillis = timeUnit.toMillis(timeout);
+        return this;
+    }
+
+    public TCPClient tcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public TCPClient idleStateHandler(IdleStateHandler idleStateHandler) {
+        channelConfig.setIdleStateHandler(idleStateHandler);
+        return this;
+    }
+
+    /**
+     * handler of the connection events and of the messages no request waits for (optional)
+     *
+     * @param channelHandler
+     */
+    public TCPClient channelHandler(final ChannelHandler channelHandler) {
+        return channelHandlerFactory(new ChannelHandlerFactory() {
+            @Override
+            public ChannelHandler getChannelHandler() {
+                return channelHandler;
+            }
+        });
+    }
+
+    public TCPClient channelHandlerFactory(ChannelHandlerFactory channelHandlerFactory) {
+        this.channelHandlerFactory = channelHandlerFactory;
+        return this;
+    }
+
+    public TCPClient channelReader(ChannelReader channelReader) {
+        channelConfig.setChannelReader(channelReader);
+        return this;
+    }
+
+    public TCPClient channelReaderFactory(ChannelReaderFactory channelReaderFactory) {
+        channelConfig.setChannelReaderFactory(channelReaderFactory);
+        return this;
+    }
+
+    /**
+     * encoder of the requests
+     *
+     * @param channelWriter
+     */
+    public TCPClient channelWriter(ChannelWriter channelWriter) {
+        this.channelWriter = channelWriter;
+        return this;
+    }
+
+    /**
+     * <p> the channel handler of the config is not used (see channelHandler) </p>
+     *
+     * @return
+     */
+    public final ChannelConfig config() {
+        return channelConfig;
+    }
+
+    public TCPClient bufferSize(int buffSize) {
+        channelConfig.setReadBufferSize(buffSize);
+        return this;
+    }
+
+    /**
+     * @param runMode EVENT_LOOP(default), EXECUTOR or VIRTUAL_THREAD
+     * @see RunMode
+     */
+    public TCPClient runMode(RunMode runMode) {
+        channelConfig.setRunMode(runMode);
+        return this;
+    }
+
+    public TCPClient bufferAllocator(ByteBufferAllocator bufferAllocator) {
+        channelConfig.setBufferAllocator(bufferAllocator);
+        return this;
+    }
+
+    public synchronized TCPClient start() {
+        if (shutdowned) {
+            throw new SocketException("Client is shutdowned");
+        }
+        if (running) {
+            return this;
+        }
+        try {
+            channelConfig.setChannelHandler(ClientChannelContext.CLIENT_CHANNEL_HANDLER);
+            channelConfig.resetChannelHandlerFactory();
+            initRunnerExecutorService();
+            TCPServer.ChannelReaderWorker[] workers = new TCPServer.ChannelReaderWorker[workerNum];
+            WorkerLoad[] loads = new WorkerLoad[workerNum];
+            for (int i = 0; i < workerNum; ++i) {
+                workers[i] = new TCPServer.ChannelReaderWorker(i, channelConfig, runnerExecutorService);
+                loads[i] = workers[i].load;
+            }
+            for (TCPServer.ChannelReaderWorker worker : workers) {
+                executorService.submit(worker);
+            }
+            this.workers = workers;
+            this.workerLoads = loads;
+            running = true;
+        } catch (Throwable e) {
+            throw e instanceof RuntimeException ? (RuntimeException) e : new SocketException(e.getMessage(), e);
+        }
+        return this;
+    }
+
+    private void initRunnerExecutorService() {
+        runnerExecutorService = executorService;
+        if (channelConfig.getRunMode() == RunMode.VIRTUAL_THREAD) {
+            if (virtualThreadExecutorService == null) {
+                virtualThreadExecutorService = RuntimeAdapter.INSTANCE.newVirtualThreadExecutor();
+            }
+            if (virtualThreadExecutorService != null) {
+                runnerExecutorService = virtualThreadExecutorService;
+            } else {
+                CONSOLE_LOG.warn("virtual threads are not supported on JDK {}, use RunMode.EXECUTOR", RuntimeAdapter.JDK_VERSION);
+            }
+        }
+    }
+
+    public CompletableFuture<ClientChannelContext> connect(String host, int port) {
+        return connect(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * <p> Open a connection on a worker without blocking the caller. </p>
+     * <p> The future is completed by the worker thread once connected (after ChannelHandler.onConnected), or fails with the connect error
+     * (SocketTimeoutException after the connect timeout). </p>
+     *
+     * @param remoteAddress
+     * @return
+     */
+    public CompletableFuture<ClientChannelContext> connect(SocketAddress remoteAddress) {
+        if (!running) {
+            throw new SocketException("Client is not started");
+        }
+        CompletableFuture<ClientChannelContext> future = new CompletableFuture<ClientChannelContext>();
+        SocketChannel channel = null;
+        ChannelConnector channelConnector = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+            TCPServer.ChannelReaderWorker worker = workers[workerChooser.choose(workerLoads)];
+            final ChannelConnector connector = channelConnector = new ChannelConnector(channel, future, channel.connect(remoteAddress), worker.load);
+            if (connectTimeoutMillis > 0) {
+                connector.timeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        connector.fail(new SocketTimeoutException("connect timed out"));
+                    }
+                }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            worker.execute(connector.registerTask(worker));
+        } catch (Throwable throwable) {
+            if (channelConnector != null) {
+                // uncounts the connection
+                channelConnector.fail(throwable);
+            } else if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+            future.completeExceptionally(throwable);
+        }
+        return future;
+    }
+
+    /**
+     * <p> Schedule a delayed task on the timer of the client (hashed wheel, tick precision). </p>
+     * <p> The task runs on the timer thread, so it must not block. </p>
+     *
+     * @param runnable
+     * @param delay
+     * @param timeUnit
+     * @return
+     */
+    public final ScheduledFuture schedule(Runnable runnable, long delay, TimeUnit timeUnit) {
+        return timer.schedule(runnable, delay, timeUnit);
+    }
+
+    /**
+     * close the connections and stop the workers (the client is no longer usable)
+     */
+    public synchronized void shutdown() {
+        if (shutdowned) return;
+        shutdowned = true;
+        running = false;
+        for (final TCPServer.ChannelReaderWorker worker : workers) {
+            // run by the worker even if it stops first
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    worker.closeChannels();
+                }
+            });
+            worker.shutdown();
+        }
+        timer.stop();
+        if (virtualThreadExecutorService != null) {
+            Utils.shutdownExecutorService(virtualThreadExecutorService);
+        }
+        Utils.shutdownExecutorService(executorService);
+    }
+
+    public final void closeLogLevel() {
+        CONSOLE_LOG.setLevel(Level.OFF);
+    }
+
+    /**
+     * a connection waiting for OP_CONNECT, attachment of its key until connected
+     */
+    final class ChannelConnector {
+        final SocketChannel channel;
+        final CompletableFuture<ClientChannelContext> future;
+        // connect() succeeded immediately (loopback)
+        final boolean connected;
+        // the connection is counted in the load of the chosen worker until it is bound or fails (the choice of the next connects sees it)
+        final WorkerLoad load;
+        final AtomicBoolean counted = new AtomicBoolean(true);
+        HashedWheelTimer.Timeout timeout;
+
+        ChannelConnector(SocketChannel channel, CompletableFuture<ClientChannelContext> future, boolean connected, WorkerLoad load) {
+            this.channel = channel;
+            this.future = future;
+            this.connected = connected;
+            this.load = load;
+            load.connections.incrementAndGet();
+        }
+
+        Runnable registerTask(final TCPServer.ChannelReaderWorker worker) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (future.isDone()) return;
+                        SelectionKey key = channel.register(worker.selector, connected ? 0 : SelectionKey.OP_CONNECT, ChannelConnector.this);
+                        if (connected) {
+                            finishConnect(worker, key);
+                        }
+                    } catch (Throwable throwable) {
+                        fail(throwable);
+                    }
+                }
+            };
+        }
+
+        /**
+         * called by the worker thread when the key is connectable
+         *
+         * @param worker
+         * @param key
+         */
+        void finishConnect(TCPServer.ChannelReaderWorker worker, SelectionKey key) {
+            TCPServer.SocketChannelRunner channelRunner = null;
+            try {
+                if (!channel.finishConnect()) return;
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                ChannelHandler channelHandler = channelHandlerFactory == null ? null : channelHandlerFactory.getChannelHandler();
+                ClientChannelContext channelContext = new ClientChannelContext(channel, channelWriter, channelHandler);
+                channelRunner = new TCPServer.SocketChannelRunner(channelContext, channelConfig, timer);
+                key.attach(channelRunner);
+                key.interestOps(SelectionKey.OP_READ);
+                if (!counted.compareAndSet(true, false)) {
+                    // failed meanwhile (timeout)
+                    channelRunner.release();
+                    return;
+                }
+                // the count is taken over by the channel
+                worker.bind(key, channelRunner);
+                if (!future.complete(channelContext)) {
+                    // timed out meanwhile
+                    channelRunner.release();
+                }
+            } catch (Throwable throwable) {
+                if (channelRunner != null) {
+                    try {
+                        channelRunner.release();
+                    } catch (IOException e) {
+                    }
+                }
+                fail(throwable);
+            }
+        }
+
+        void fail(Throwable cause) {
+            if (counted.compareAndSet(true, false)) {
+                load.connections.decrementAndGet();
+            }
+            if (future.completeExceptionally(cause)) {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
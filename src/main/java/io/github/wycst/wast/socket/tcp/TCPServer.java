@@ -1,5 +1,6 @@
 package io.github.wycst.wast.socket.tcp;
 
+import io.github.wycst.wast.socket.buffer.ByteBufferAllocator;
 import io.github.wycst.wast.socket.codec.ChannelHandlerDelegation;
 import io.github.wycst.wast.socket.codec.ChannelReader;
 import io.github.wycst.wast.socket.env.RuntimeAdapter;
@@ -9,22 +10,36 @@ import io.github.wycst.wast.socket.factory.ChannelReaderFactory;
 import io.github.wycst.wast.socket.handler.ChannelHandler;
 import io.github.wycst.wast.socket.handler.IdleStateHandler;
 import io.github.wycst.wast.socket.log.ConsoleLog;
+import io.github.wycst.wast.socket.metrics.ServerMetrics;
+import io.github.wycst.wast.socket.util.HashedWheelTimer;
 import io.github.wycst.wast.socket.util.Utils;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 /**
@@ -37,13 +52,23 @@ public class TCPServer {
 
     public static final ConsoleLog CONSOLE_LOG = ConsoleLog.getLog(TCPServer.class);
     private final ExecutorService executorService = Executors.newCachedThreadPool();
+    // executor of the runners: executorService, or virtual threads in VIRTUAL_THREAD mode
+    private ExecutorService runnerExecutorService = executorService;
+    private ExecutorService virtualThreadExecutorService;
+    // shared by all channels (idle detection and ChannelContext.schedule), the thread is started on first use
+    private final HashedWheelTimer timer = new HashedWheelTimer("wast-socket-timer");
     protected final int port;
     volatile boolean serverRunFlag = false;
-    volatile Selector selector;
-    ServerSocketChannel serverChannel;
+    ChannelAcceptDispatcher[] acceptDispatchers;
     boolean shutdowned = false;
 
     private int workerNum = 1;
+    private int acceptorNum = 1;
+    // accept queue length (capped by net.core.somaxconn), the jdk default 50 overflows during connect storms
+    private int backlog = 1024;
+    // worker of each accepted connection, shared by all the acceptors
+    private WorkerChooser workerChooser = WorkerChooser.ROUND_ROBIN;
+    private WorkerLoad[] workerLoads = new WorkerLoad[0];
 
     protected ChannelConfig channelConfig = new ChannelConfig();
     // ssl
@@ -52,12 +77,29 @@ public class TCPServer {
     private String[] sslCipherSuites;
     private String[] applicationProtocols;
     protected SSLContextWrapper sslContextWrapper;
+    // server session cache of the sslContext, -1 keeps the jdk defaults
+    private int sslSessionCacheSize = -1;
+    private int sslSessionTimeout = -1;
+    // delegated tasks of the ssl handshakes (key exchange, certificate checks), shared by all the connections
+    private int sslTaskThreads = Runtime.getRuntime().availableProcessors();
+    private int sslTaskQueueSize = 4096;
+    private ExecutorService sslTaskExecutorService;
+    // outbound encryption offload, disabled if 0
+    private int sslCryptoThreads;
+    private ExecutorService sslCryptoExecutorService;
+    // metrics
+    private final ServerMetrics metrics;
+    private boolean metricsEnabled = true;
+    private boolean metricsMBean;
+    private ChannelReaderWorker[] readerWorkers = new ChannelReaderWorker[0];
 
     public TCPServer(int port) {
         if (port <= 0) {
             throw new IllegalArgumentException("port out of range: " + port);
         }
         this.port = port;
+        this.metrics = new ServerMetrics(port);
+        this.registerGauges();
     }
 
     public final int getPort() {
@@ -78,6 +120,49 @@ public class TCPServer {
         return this;
     }
 
+    /**
+     * <p> Number of acceptor threads (min 1). </p>
+     * <p> When greater than 1, each acceptor binds its own listening channel with SO_REUSEPORT and the kernel spreads the incoming connections,
+     * if SO_REUSEPORT is not supported (JDK8, Windows) a single acceptor is used. </p>
+     *
+     * @param acceptorNum
+     */
+    public TCPServer acceptorNum(int acceptorNum) {
+        this.acceptorNum = Math.max(acceptorNum, 1);
+        return this;
+    }
+
+    /**
+     * <p> Strategy choosing the worker of each accepted connection (default round-robin). </p>
+     * <p> WorkerChooser.LEAST_CONNECTIONS or WorkerChooser.LEAST_PENDING_BYTES balance long-lived connections with skewed traffic. </p>
+     *
+     * @param workerChooser
+     */
+    public TCPServer workerChooser(WorkerChooser workerChooser) {
+        workerChooser.getClass();
+        this.workerChooser = workerChooser;
+        return this;
+    }
+
+    /**
+     * load of each worker (empty before start)
+     *
+     * @return
+     */
+    public WorkerLoad[] getWorkerLoads() {
+        return workerLoads.clone();
+    }
+
+    /**
+     * listen backlog of each listening channel
+     *
+     * @param backlog
+     */
+    public TCPServer backlog(int backlog) {
+        this.backlog = Math.max(backlog, 1);
+        return this;
+    }
+
     public TCPServer ssl(boolean ssl) {
         this.ssl = ssl;
         return this;
@@ -124,6 +209,31 @@ public class TCPServer {
         return this;
     }
 
+    /**
+     * @param runMode EXECUTOR(default) or EVENT_LOOP
+     * @see RunMode
+     */
+    public TCPServer runMode(RunMode runMode) {
+        channelConfig.setRunMode(runMode);
+        return this;
+    }
+
+    public TCPServer bufferAllocator(ByteBufferAllocator bufferAllocator) {
+        channelConfig.setBufferAllocator(bufferAllocator);
+        return this;
+    }
+
+    /**
+     * spill the outbound bytes of a channel beyond the threshold to disk, the disk caps are set on config()
+     *
+     * @param spillThreshold in-memory pending bytes per channel, <= 0 to disable
+     * @see ChannelConfig#setSpillThreshold(long)
+     */
+    public TCPServer spillThreshold(long spillThreshold) {
+        channelConfig.setSpillThreshold(spillThreshold);
+        return this;
+    }
+
     public TCPServer sslContext(SSLContext sslContext) {
         sslContext.getClass();
         this.sslContext = sslContext;
@@ -137,12 +247,189 @@ public class TCPServer {
         return this;
     }
 
+    /**
+     * <p> Max sessions kept by the server session cache for resumption (0 means no limit, jdk default 20480). </p>
+     * <p> Resumed vs full handshakes are counted in config(). </p>
+     *
+     * @param sslSessionCacheSize
+     */
+    public TCPServer sslSessionCacheSize(int sslSessionCacheSize) {
+        if (sslSessionCacheSize < 0) {
+            throw new IllegalArgumentException("sslSessionCacheSize must not be negative: " + sslSessionCacheSize);
+        }
+        this.sslSessionCacheSize = sslSessionCacheSize;
+        return this;
+    }
+
+    /**
+     * Lifetime of the cached sessions and of the session tickets (0 means no limit, jdk default 86400 seconds).
+     *
+     * @param sslSessionTimeout seconds
+     */
+    public TCPServer sslSessionTimeout(int sslSessionTimeout) {
+        if (sslSessionTimeout < 0) {
+            throw new IllegalArgumentException("sslSessionTimeout must not be negative: " + sslSessionTimeout);
+        }
+        this.sslSessionTimeout = sslSessionTimeout;
+        return this;
+    }
+
+    /**
+     * <p> JVM-wide switch of the stateless session tickets (RFC 5077, TLS 1.3 tickets): the session state is encrypted into a ticket kept by the client instead of the server cache. </p>
+     * <p> The jdk has no per-context api for it: this sets the system property jdk.tls.server.enableSessionTicketExtension (JDK 13+, default true),
+     * which is read when an SSLContext is created. It applies to every SSLContext created afterwards in the jvm (all the servers and clients),
+     * not to the contexts that already exist: call it before creating the SSLContext passed to sslContext(SSLContext).
+     * Without tickets (and on JDK 8) resumption uses the session cache. </p>
+     *
+     * @param sslSessionTickets
+     */
+    public static void setJvmSslSessionTickets(boolean sslSessionTickets) {
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(sslSessionTickets));
+    }
+
+    /**
+     * <p> Bounded pool running the delegated tasks of the ssl handshakes (default: availableProcessors threads, 4096 queued tasks). </p>
+     * <p> When the queue is full the task runs on the thread advancing the handshake. </p>
+     *
+     * @param threads   min 1
+     * @param queueSize min 1
+     */
+    public TCPServer sslTaskPool(int threads, int queueSize) {
+        this.sslTaskThreads = Math.max(threads, 1);
+        this.sslTaskQueueSize = Math.max(queueSize, 1);
+        return this;
+    }
+
+    /**
+     * <p> Opt-in offload of the outbound TLS encryption to a pool of cryptoThreads threads (0 disables it, the default). </p>
+     * <p> write() copies the plaintext into a serial lane of the connection and returns, a pool thread wraps the lane in order
+     * and flushes the records: the handler, the encryption and the socket writes of one connection run on different cores. </p>
+     * <p> The records of one connection are still encrypted one after another (SSLEngine is sequential: sequence numbers and cipher state),
+     * so it helps a few connections producing a lot of data while encryption runs, not short request/response exchanges (one more thread hop). </p>
+     *
+     * @param cryptoThreads
+     */
+    public TCPServer sslCryptoOffload(int cryptoThreads) {
+        this.sslCryptoThreads = Math.max(cryptoThreads, 0);
+        return this;
+    }
+
     public TCPServer applicationProtocols(String... applicationProtocols) {
         applicationProtocols.getClass();
         this.applicationProtocols = applicationProtocols;
         return this;
     }
 
+    /**
+     * update the counters of metrics() on the hot paths (default true)
+     *
+     * @param metricsEnabled
+     */
+    public TCPServer metrics(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    /**
+     * register metrics() as a platform MXBean when the server starts (unregistered on shutdown)
+     *
+     * @param metricsMBean
+     */
+    public TCPServer metricsMBean(boolean metricsMBean) {
+        this.metricsMBean = metricsMBean;
+        return this;
+    }
+
+    /**
+     * counters and gauges of the server, see ServerMetrics.toPrometheusText()
+     *
+     * @return
+     */
+    public final ServerMetrics metrics() {
+        return metrics;
+    }
+
+    private void registerGauges() {
+        metrics.register("pending_write_bytes", null, "gauge", "Bytes queued for the sockets and not written yet.", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                long pendingBytes = 0;
+                for (WorkerLoad workerLoad : workerLoads) {
+                    pendingBytes += workerLoad.getPendingBytes();
+                }
+                return pendingBytes;
+            }
+        });
+        metrics.register("selects_total", null, "counter", "Select calls of the workers.", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                long selectCount = 0;
+                for (WorkerLoad workerLoad : workerLoads) {
+                    selectCount += workerLoad.getSelectCount();
+                }
+                return selectCount;
+            }
+        });
+        metrics.register("worker_task_queue", null, "gauge", "Tasks queued for the worker threads (registrations, interest ops).", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                long size = 0;
+                for (ChannelReaderWorker worker : readerWorkers) {
+                    size += worker.taskQueue.size();
+                }
+                return size;
+            }
+        });
+        metrics.register("executor_queue", "executor=\"runner\"", "gauge", "Tasks waiting for an executor thread.", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return queueSize(runnerExecutorService);
+            }
+        });
+        metrics.register("executor_queue", "executor=\"ssl_task\"", "gauge", null, new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return queueSize(sslTaskExecutorService);
+            }
+        });
+        metrics.register("executor_queue", "executor=\"ssl_crypto\"", "gauge", null, new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return queueSize(sslCryptoExecutorService);
+            }
+        });
+        metrics.register("executor_active_threads", "executor=\"runner\"", "gauge", "Executor threads running a task (the runner executor also runs the acceptor and worker threads in EXECUTOR mode).", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                ExecutorService executorService = runnerExecutorService;
+                return executorService instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executorService).getActiveCount() : 0;
+            }
+        });
+        metrics.register("ssl_handshakes_total", "type=\"full\"", "counter", "Completed ssl handshakes.", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return channelConfig.getFullHandshakes();
+            }
+        });
+        metrics.register("ssl_handshakes_total", "type=\"resumed\"", "counter", null, new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return channelConfig.getResumedHandshakes();
+            }
+        });
+        metrics.register("spilled_bytes", null, "gauge", "Outbound bytes mapped to the spill files.", new ServerMetrics.Gauge() {
+            @Override
+            public long value() {
+                return channelConfig.getSpilledBytes();
+            }
+        });
+    }
+
+    static long queueSize(ExecutorService executorService) {
+        // virtual threads: no queue
+        return executorService instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executorService).getQueue().size() : 0;
+    }
+
     public TCPServer printSSLErrorLog(boolean bl) {
         channelConfig.setPrintSSLErrorLog(bl);
         return this;
@@ -160,41 +447,104 @@ public class TCPServer {
 
     class ChannelAcceptDispatcher extends Thread {
 
+        // max connections accepted per readiness event
+        static final int MAX_ACCEPT_BATCH = 64;
+
         private final ChannelReaderWorker[] workers;
-        private final int workerNumMask;
+        final Selector selector;
+        // null if the selector could not be patched
+        final SelectedSelectionKeySet selectedKeySet;
+        final ServerSocketChannel serverChannel;
 
-        public ChannelAcceptDispatcher(ChannelReaderWorker[] workers) {
+        public ChannelAcceptDispatcher(ChannelReaderWorker[] workers, boolean reusePort) throws IOException {
             this.workers = workers;
-            this.workerNumMask = workers.length - 1;
+            this.selector = Selector.open();
+            this.selectedKeySet = SelectedSelectionKeySet.install(selector);
+            this.serverChannel = ServerSocketChannel.open();
+            try {
+                serverChannel.configureBlocking(false);
+                if (reusePort && !RuntimeAdapter.INSTANCE.setReusePort(serverChannel)) {
+                    throw new SocketException("SO_REUSEPORT is not supported");
+                }
+                ServerSocket serverSocket = serverChannel.socket();
+                serverSocket.setReuseAddress(true);
+                serverSocket.bind(new InetSocketAddress(port), backlog);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                close();
+                throw e;
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                selector.wakeup();
+                selector.close();
+            } catch (IOException e) {
+            }
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+            }
         }
 
         void handleAccept() throws Throwable {
 
-            int clientCnt = 0;
             while (serverRunFlag) {
                 int num = selector.select();
                 if (num == 0) continue;
-                Set<SelectionKey> selectedKeys = selector.selectedKeys();
-                Iterator<SelectionKey> iter = selectedKeys.iterator();
-                while (iter.hasNext()) {
-                    SelectionKey key = iter.next();
-                    iter.remove();
-                    if (!key.isValid()) {
-                        CONSOLE_LOG.info("handleAccept: isValid false");
-                        continue;
-                    }
-                    if (key.isAcceptable()) {
-                        SocketChannel client = serverChannel.accept();
+                if (selectedKeySet != null) {
+                    SelectionKey[] keys = selectedKeySet.keys;
+                    for (int i = 0, n = selectedKeySet.size; i < n; ++i) {
+                        processSelectedKey(keys[i]);
+                    }
+                    selectedKeySet.reset();
+                } else {
+                    Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                    Iterator<SelectionKey> iter = selectedKeys.iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        processSelectedKey(key);
+                    }
+                }
+            }
+        }
+
+        void processSelectedKey(SelectionKey key) throws IOException {
+            if (!key.isValid()) {
+                CONSOLE_LOG.info("handleAccept: isValid false");
+                return;
+            }
+            if (key.isAcceptable()) {
+                // drain the backlog (bounded) to absorb connect storms
+                SocketChannel client;
+                for (int i = 0; i < MAX_ACCEPT_BATCH && (client = serverChannel.accept()) != null; ++i) {
+                    try {
                         client.configureBlocking(false);
                         SocketChannelRunner channelRunner = createSocketRunner(client);
-                        ChannelReaderWorker channelReaderWorker = workers[++clientCnt & workerNumMask];
+                        ChannelReaderWorker channelReaderWorker = workers[workerChooser.choose(workerLoads)];
                         channelReaderWorker.register(client, channelRunner);
+                        if (channelConfig.metrics != null) {
+                            channelConfig.metrics.incrementAccepted();
+                        }
+                    } catch (Throwable throwable) {
+                        if (channelConfig.isPrintReadErrorLog()) {
+                            throwable.printStackTrace();
+                        }
+                        if (channelConfig.metrics != null) {
+                            channelConfig.metrics.incrementAcceptErrors();
+                        }
+                        try {
+                            client.close();
+                        } catch (IOException e) {
+                        }
                     }
                 }
             }
-            for (ChannelReaderWorker worker : workers) {
-                worker.wakeup();
-            }
         }
 
         @Override
@@ -202,31 +552,125 @@ public class TCPServer {
             try {
                 handleAccept();
             } catch (Throwable e) {
-                e.printStackTrace();
+                if (serverRunFlag) {
+                    e.printStackTrace();
+                }
             }
         }
     }
 
-    class ChannelReaderWorker extends Thread {
+    /**
+     * selector thread of the channels of a TCPServer or a TCPClient
+     */
+    static class ChannelReaderWorker extends Thread implements Executor {
         final String workId;
         final Selector selector;
-        boolean registering;
-
-        public ChannelReaderWorker() throws IOException {
+        // null if the selector could not be patched
+        final SelectedSelectionKeySet selectedKeySet;
+        final ChannelConfig channelConfig;
+        final boolean eventLoop;
+        // executor of the runners (EXECUTOR and VIRTUAL_THREAD modes)
+        final Executor runnerExecutor;
+        final WorkerLoad load;
+        // cleared by shutdown()
+        volatile boolean running = true;
+        // tasks of other threads (registrations, interest ops changes), multi producers and the worker as single consumer
+        final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+        // a wakeup is already pending, one selector.wakeup() for a burst of tasks
+        final AtomicBoolean wakenUp = new AtomicBoolean();
+        // the pool thread running this worker
+        volatile Thread thread;
+
+        public ChannelReaderWorker(int index, ChannelConfig channelConfig, Executor runnerExecutor) throws IOException {
             this.workId = Utils.hex();
+            this.channelConfig = channelConfig;
+            this.eventLoop = channelConfig.getRunMode() == RunMode.EVENT_LOOP;
+            this.runnerExecutor = runnerExecutor;
+            this.load = new WorkerLoad(index);
             this.selector = Selector.open();
+            this.selectedKeySet = SelectedSelectionKeySet.install(selector);
         }
 
-        public void register(SocketChannel client, SocketChannelRunner channelRunner) throws ClosedChannelException {
-            registering = true;
-            selector.wakeup();
+        /**
+         * <p> Register the accepted channel on the worker thread. </p>
+         * <p> The connection is counted in the load right away, so the choice of the next connections of an accept burst sees it
+         * (LEAST_CONNECTIONS would otherwise read the counters before the queued registrations run). </p>
+         *
+         * @param client
+         * @param channelRunner
+         */
+        public void register(final SocketChannel client, final SocketChannelRunner channelRunner) {
+            load.connections.incrementAndGet();
             try {
-                SelectionKey selectionKey = client.register(selector, SelectionKey.OP_READ, channelRunner);
-                channelRunner.setReadKey(selectionKey);
-            } finally {
-                registering = false;
-                synchronized (this) {
-                    notify();
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean bound = false;
+                        try {
+                            if (!client.isOpen()) return;
+                            bind(client.register(selector, SelectionKey.OP_READ, channelRunner), channelRunner);
+                            bound = true;
+                        } catch (Throwable throwable) {
+                            if (channelConfig.isPrintReadErrorLog()) {
+                                throwable.printStackTrace();
+                            }
+                            try {
+                                channelRunner.close();
+                            } catch (IOException e) {
+                            }
+                        } finally {
+                            if (!bound) {
+                                load.connections.decrementAndGet();
+                            }
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // worker stopped
+                load.connections.decrementAndGet();
+                throw e;
+            }
+        }
+
+        /**
+         * <p> bind the runner to its (OP_READ) key, called by the worker thread </p>
+         * <p> The connection must be counted in the load already, it is uncounted when the channel closes (or now if it is closed already). </p>
+         *
+         * @param selectionKey
+         * @param channelRunner
+         */
+        void bind(SelectionKey selectionKey, SocketChannelRunner channelRunner) {
+            channelRunner.channelContext.setWorker(this);
+            channelRunner.setReadKey(selectionKey);
+            if (!channelRunner.channelContext.setWorkerLoad(load)) {
+                load.connections.decrementAndGet();
+            }
+        }
+
+        /**
+         * run the task on the worker thread (asynchronously, even if called by the worker itself)
+         *
+         * @param task
+         */
+        @Override
+        public void execute(Runnable task) {
+            taskQueue.add(task);
+            if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void runTasks() {
+            Runnable task;
+            while ((task = taskQueue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    throwable.printStackTrace();
                 }
             }
         }
@@ -235,87 +679,153 @@ public class TCPServer {
             selector.wakeup();
         }
 
-        void handleRead() throws Throwable {
-            while (serverRunFlag) {
-                // can also use selector.selectNow()
-                int num = selector.select();
-                if (registering) {
-                    synchronized (this) {
-                        wait();
+        /**
+         * stop the select loop, the selector is closed by the worker thread
+         */
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        /**
+         * close the channels registered on the selector (connected or connecting), called by the worker thread
+         */
+        void closeChannels() {
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                try {
+                    if (attachment instanceof SocketChannelRunner) {
+                        ((SocketChannelRunner) attachment).release();
+                    } else if (attachment instanceof TCPClient.ChannelConnector) {
+                        ((TCPClient.ChannelConnector) attachment).fail(new ClosedChannelException());
+                    } else {
+                        key.channel().close();
+                    }
+                } catch (Throwable throwable) {
+                    if (channelConfig.isPrintReadErrorLog()) {
+                        throwable.printStackTrace();
                     }
                 }
+            }
+        }
+
+        void handleRead() throws Throwable {
+            while (running) {
+                // reset before checking the queue: a task added after the check sets it again and wakes up the select below
+                wakenUp.set(false);
+                int num = taskQueue.isEmpty() ? selector.select() : selector.selectNow();
+                ++load.selectCount;
+                runTasks();
                 // maybe zero if wakeup
                 if (num == 0) continue;
-                Set<SelectionKey> selectedKeys = selector.selectedKeys();
-                Iterator<SelectionKey> iter = selectedKeys.iterator();
-                while (iter.hasNext()) {
-                    SelectionKey key = iter.next();
-                    iter.remove();
-                    // get binded runner
-                    SocketChannelRunner channelRunner = (SocketChannelRunner) key.attachment();
-                    try {
-                        if (key.isValid()/*key.isReadable()*/) {
-                            if (!channelRunner.isRunFlag()) {
-                                channelRunner.runFlag = true;
-                                executorService.execute(channelRunner);
-                            } else {
-                                channelRunner.channelContext.wakeup();
-                                channelRunner.channelReader.wakeup();
-                            }
-                        }
-                    } catch (Throwable throwable) {
-                        if (channelConfig.isPrintReadErrorLog()) {
-                            throwable.printStackTrace();
-                        }
-                        channelRunner.close();
+                if (selectedKeySet != null) {
+                    SelectionKey[] keys = selectedKeySet.keys;
+                    for (int i = 0, n = selectedKeySet.size; i < n; ++i) {
+                        processSelectedKey(keys[i]);
+                    }
+                    selectedKeySet.reset();
+                } else {
+                    Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                    Iterator<SelectionKey> iter = selectedKeys.iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        processSelectedKey(key);
                     }
                 }
             }
+            // tasks queued before the stop (closeChannels)
+            runTasks();
             selector.close();
         }
 
+        void processSelectedKey(SelectionKey key) throws IOException {
+            if (key.isValid() && key.isConnectable()) {
+                // outbound connection of a TCPClient
+                ((TCPClient.ChannelConnector) key.attachment()).finishConnect(this, key);
+                return;
+            }
+            // get binded runner
+            SocketChannelRunner channelRunner = (SocketChannelRunner) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    channelRunner.channelContext.flushOutbound();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    dispatch(channelRunner);
+                }
+            } catch (Throwable throwable) {
+                if (channelConfig.isPrintReadErrorLog()) {
+                    throwable.printStackTrace();
+                }
+                channelRunner.close();
+            }
+        }
+
+        /**
+         * run the runner for a readiness event, called by the worker thread
+         *
+         * @param channelRunner
+         */
+        void dispatch(SocketChannelRunner channelRunner) {
+            if (eventLoop) {
+                // read, decode and handle inline
+                channelRunner.run();
+                return;
+            }
+            // stop selecting the key until the runner finishes or waits for more bytes (resumeRead)
+            channelRunner.channelContext.suspendRead();
+            if (!channelRunner.isRunFlag()) {
+                channelRunner.runFlag = true;
+                runnerExecutor.execute(channelRunner);
+            } else {
+                channelRunner.channelContext.wakeup();
+                channelRunner.channelReader.wakeup();
+            }
+        }
+
         @Override
         public void run() {
+            thread = Thread.currentThread();
             try {
                 handleRead();
             } catch (Throwable e) {
                 e.printStackTrace();
+            } finally {
+                // registrations queued after the stop fail on the closed selector and close their channels
+                runTasks();
             }
         }
     }
 
     ChannelReaderWorker[] workers(int workNum) throws IOException {
-        int cap = cap(workNum);
-        ChannelReaderWorker[] selectorWorks = new ChannelReaderWorker[cap];
-        for (int i = 0; i < cap; ++i) {
-            selectorWorks[i] = new ChannelReaderWorker();
+        // exactly workNum workers, the chooser does not need a power of two
+        ChannelReaderWorker[] selectorWorks = new ChannelReaderWorker[workNum];
+        for (int i = 0; i < workNum; ++i) {
+            selectorWorks[i] = new ChannelReaderWorker(i, channelConfig, runnerExecutorService);
         }
         return selectorWorks;
     }
 
-    static int cap(int n) {
-        int cap = 1 << (31 - Integer.numberOfLeadingZeros(n));
-        if (n != cap) {
-            cap = cap << 1;
-        }
-        return cap;
-    }
-
     public synchronized TCPServer start() {
         checkServerAvailable();
         try {
             serverRunFlag = true;
-            selector = Selector.open();
-            serverChannel = ServerSocketChannel.open();
-            serverChannel.configureBlocking(false);
-
-            ServerSocket serverSocket = serverChannel.socket();
-            serverSocket.setReuseAddress(true);
-            serverSocket.bind(new InetSocketAddress(port));
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
             this.initSslContext();
+            this.initRunnerExecutorService();
+            channelConfig.metrics = metricsEnabled ? metrics : null;
+            if (metricsMBean) {
+                metrics.registerMBean();
+            }
             final ChannelReaderWorker[] readerWorkers = workers(workerNum);
-            submitTasks(new ChannelAcceptDispatcher(readerWorkers));
+            this.readerWorkers = readerWorkers;
+            WorkerLoad[] loads = new WorkerLoad[readerWorkers.length];
+            for (int i = 0; i < loads.length; ++i) {
+                loads[i] = readerWorkers[i].load;
+            }
+            workerLoads = loads;
+            acceptDispatchers = acceptDispatchers(readerWorkers);
+            submitTasks(acceptDispatchers);
             submitTasks(readerWorkers);
         } catch (Throwable e) {
             throw e instanceof RuntimeException ? (RuntimeException) e : new SocketException(e.getMessage(), e);
@@ -324,6 +834,32 @@ public class TCPServer {
         return this;
     }
 
+    ChannelAcceptDispatcher[] acceptDispatchers(ChannelReaderWorker[] readerWorkers) throws IOException {
+        int num = acceptorNum;
+        if (num > 1 && !RuntimeAdapter.INSTANCE.isReusePortSupported()) {
+            CONSOLE_LOG.warn("SO_REUSEPORT is not supported, use a single acceptor instead of {}", num);
+            num = 1;
+        }
+        ChannelAcceptDispatcher[] dispatchers = new ChannelAcceptDispatcher[num];
+        try {
+            for (int i = 0; i < num; ++i) {
+                dispatchers[i] = new ChannelAcceptDispatcher(readerWorkers, num > 1);
+            }
+        } catch (IOException e) {
+            closeAcceptDispatchers(dispatchers);
+            throw e;
+        }
+        return dispatchers;
+    }
+
+    static void closeAcceptDispatchers(ChannelAcceptDispatcher[] dispatchers) {
+        for (ChannelAcceptDispatcher dispatcher : dispatchers) {
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
+        }
+    }
+
     void submitTasks(Runnable... tasks) {
         for (Runnable task : tasks) {
             executorService.submit(task);
@@ -332,9 +868,23 @@ public class TCPServer {
 
     private SocketChannelRunner createSocketRunner(SocketChannel socketChannel) throws IOException {
         if (sslContextWrapper != null) {
-            return new SocketChannelSSLRunner(socketChannel, channelConfig, sslContextWrapper);
+            return new SocketChannelSSLRunner(socketChannel, channelConfig, timer, sslContextWrapper, channelConfig.getBufferAllocator(), sslTaskExecutorService, sslCryptoExecutorService);
         } else {
-            return new SocketChannelRunner(socketChannel, channelConfig);
+            return new SocketChannelRunner(socketChannel, channelConfig, timer);
+        }
+    }
+
+    private void initRunnerExecutorService() {
+        runnerExecutorService = executorService;
+        if (channelConfig.getRunMode() == RunMode.VIRTUAL_THREAD) {
+            if (virtualThreadExecutorService == null) {
+                virtualThreadExecutorService = RuntimeAdapter.INSTANCE.newVirtualThreadExecutor();
+            }
+            if (virtualThreadExecutorService != null) {
+                runnerExecutorService = virtualThreadExecutorService;
+            } else {
+                CONSOLE_LOG.warn("virtual threads are not supported on JDK {}, use RunMode.EXECUTOR", RuntimeAdapter.JDK_VERSION);
+            }
         }
     }
 
@@ -343,10 +893,38 @@ public class TCPServer {
             if (sslContext == null) {
                 // create default
             }
+            SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+            if (sslSessionCacheSize > -1) {
+                sessionContext.setSessionCacheSize(sslSessionCacheSize);
+            }
+            if (sslSessionTimeout > -1) {
+                sessionContext.setSessionTimeout(sslSessionTimeout);
+            }
             sslContextWrapper = new SSLContextWrapper(sslContext, sslCipherSuites, applicationProtocols);
+            if (sslTaskExecutorService == null) {
+                sslTaskExecutorService = newSslExecutorService("wast-ssl-task-", sslTaskThreads, sslTaskQueueSize);
+            }
+            if (sslCryptoThreads > 0 && sslCryptoExecutorService == null) {
+                // at most one queued task per connection
+                sslCryptoExecutorService = newSslExecutorService("wast-ssl-crypto-", sslCryptoThreads, sslTaskQueueSize);
+            }
         }
     }
 
+    static ExecutorService newSslExecutorService(final String threadNamePrefix, int threads, int queueSize) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
     private void checkServerAvailable() {
         if (shutdowned) {
             throw new SocketException("Sever is shutdowned");
@@ -360,9 +938,17 @@ public class TCPServer {
         try {
             if (serverRunFlag) {
                 serverRunFlag = false;
-                selector.wakeup();
-                selector.close();
-                serverChannel.close();
+                closeAcceptDispatchers(acceptDispatchers);
+                for (final ChannelReaderWorker worker : readerWorkers) {
+                    // the connections are not served anymore, run by the worker even if it stops first
+                    worker.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            worker.closeChannels();
+                        }
+                    });
+                    worker.shutdown();
+                }
                 CONSOLE_LOG.info("server is stoped");
             } else {
                 CONSOLE_LOG.info("server is not start");
@@ -389,6 +975,17 @@ public class TCPServer {
             stop();
         }
         if (!shutdowned) {
+            metrics.unregisterMBean();
+            timer.stop();
+            if (virtualThreadExecutorService != null) {
+                Utils.shutdownExecutorService(virtualThreadExecutorService);
+            }
+            if (sslTaskExecutorService != null) {
+                Utils.shutdownExecutorService(sslTaskExecutorService);
+            }
+            if (sslCryptoExecutorService != null) {
+                Utils.shutdownExecutorService(sslCryptoExecutorService);
+            }
             Utils.shutdownExecutorService(executorService);
             shutdowned = true;
         }
@@ -413,10 +1010,20 @@ public class TCPServer {
         final ByteBuffer packetOutBuf;
         final ByteBuffer applicationOutBuf;
 
+        final ByteBufferAllocator bufferAllocator;
         boolean disabled;
+        boolean released;
 
-        public SSLEngineContext(SSLContextWrapper sslContextWrapper) {
-            sslEngine = sslContextWrapper.sslContext.createSSLEngine();
+        /**
+         * @param sslContextWrapper
+         * @param bufferAllocator
+         * @param peerAddress       remote address, its host is the peer host hint of the engine (SSLSession.getPeerHost()), may be null
+         */
+        public SSLEngineContext(SSLContextWrapper sslContextWrapper, ByteBufferAllocator bufferAllocator, InetSocketAddress peerAddress) {
+            // getHostString: no reverse lookup.
+            // the server resumes by session id or ticket, the port (-1) is not given: the ephemeral client port would only add
+            // never matched host:port entries to the session cache
+            sslEngine = peerAddress == null ? sslContextWrapper.sslContext.createSSLEngine() : sslContextWrapper.sslContext.createSSLEngine(peerAddress.getHostString(), -1);
             String[] cipherSuites = sslContextWrapper.sslCipherSuites;
             String[] applicationProtocols = sslContextWrapper.applicationProtocols;
             if (cipherSuites != null && cipherSuites.length > 0) {
@@ -425,8 +1032,10 @@ public class TCPServer {
             RuntimeAdapter.INSTANCE.setApplicationProtocols(sslEngine, applicationProtocols);
             sslEngine.setUseClientMode(false);
             SSLSession session = sslEngine.getSession();
-            packetInBuf = ByteBuffer.allocate(session.getPacketBufferSize());
-            applicationInBuf = ByteBuffer.allocate(session.getApplicationBufferSize());
+            this.bufferAllocator = bufferAllocator;
+            // input buffers are only used by the runner, so they can be pooled
+            packetInBuf = bufferAllocator.allocate(session.getPacketBufferSize());
+            applicationInBuf = bufferAllocator.allocate(session.getApplicationBufferSize());
             packetOutBuf = ByteBuffer.allocate(session.getPacketBufferSize());
             applicationOutBuf = ByteBuffer.allocate(session.getApplicationBufferSize());
             session.invalidate();
@@ -439,9 +1048,20 @@ public class TCPServer {
         public boolean isDisabled() {
             return disabled;
         }
+
+        /**
+         * give back the pooled input buffers, only called by the runner after the channel is closed
+         */
+        void releaseInputBuffers() {
+            if (!released) {
+                released = true;
+                bufferAllocator.release(packetInBuf);
+                bufferAllocator.release(applicationInBuf);
+            }
+        }
     }
 
-    static class SocketChannelRunner extends Thread {
+    static class SocketChannelRunner implements Runnable {
         protected final ChannelContext channelContext;
         protected final ChannelConfig channelConfig;
         protected final ChannelReader channelReader;
@@ -450,20 +1070,42 @@ public class TCPServer {
 
         protected boolean ready;
         protected boolean closed;
+        // the last exception out of channelReader.read was thrown by the handler (not a decode error)
+        private boolean handlerFailed;
         volatile boolean runFlag;
+        // a run requested by another thread (not by a readiness event), see resume()
+        volatile boolean resumeRequested;
+        private final Runnable resumeTask = new Runnable() {
+            @Override
+            public void run() {
+                // a running runner checks the flag again when it finishes
+                if (!runFlag && resumeRequested) {
+                    resumeRequested = false;
+                    channelContext.worker.dispatch(SocketChannelRunner.this);
+                }
+            }
+        };
 
         public boolean isRunFlag() {
             return runFlag;
         }
 
-        SocketChannelRunner(SocketChannel channel, ChannelConfig channelConfig) throws IOException {
-            this(new ChannelContext(channel), channelConfig);
+        SocketChannelRunner(SocketChannel channel, ChannelConfig channelConfig, HashedWheelTimer timer) throws IOException {
+            this(new ChannelContext(channel), channelConfig, timer);
         }
 
-        SocketChannelRunner(final ChannelContext channelContext, ChannelConfig channelConfig) throws IOException {
+        SocketChannelRunner(final ChannelContext channelContext, ChannelConfig channelConfig, HashedWheelTimer timer) throws IOException {
             this.channelContext = channelContext;
             this.channelConfig = channelConfig;
+            channelContext.setTimer(timer);
             this.channelReader = channelConfig.getChannelReader();
+            channelContext.setEventLoop(channelConfig.getRunMode() == RunMode.EVENT_LOOP);
+            channelContext.setWriteHighWaterMark(channelConfig.getWriteHighWaterMark());
+            channelContext.setMetrics(channelConfig.metrics);
+            if (channelConfig.getSpillThreshold() > 0) {
+                channelContext.setOutboundSpill(new ChannelOutboundSpill(channelConfig.getSpillDirectory(), channelConfig.getMaxSpillBytesPerChannel(),
+                        channelConfig.spilledBytes, channelConfig.getMaxSpillBytes()), channelConfig.getSpillThreshold());
+            }
             if ((this.channelHandler = channelConfig.getChannelHandler()) == null) {
                 throw new SocketException("channel handler not set");
             }
@@ -480,14 +1122,30 @@ public class TCPServer {
             return new ChannelHandlerDelegation() {
                 @Override
                 public void call(Object target) throws IOException {
-                    channelHandler.onHandle(channelContext, target);
+                    ServerMetrics metrics = channelConfig.metrics;
+                    long begin = metrics == null ? 0 : System.nanoTime();
+                    boolean handled = false;
+                    try {
+                        channelHandler.onHandle(channelContext, target);
+                        handled = true;
+                    } finally {
+                        if (!handled) {
+                            handlerFailed = true;
+                        }
+                        if (metrics != null) {
+                            metrics.addHandlerTime(System.nanoTime() - begin);
+                        }
+                    }
                 }
             };
         }
 
         public void run() {
+            ServerMetrics metrics = channelConfig.metrics;
+            long begin = metrics == null ? 0 : System.nanoTime();
             try {
                 runFlag = true;
+                channelContext.runnerThread = Thread.currentThread();
                 before();
                 if (this.closed) return;
                 try {
@@ -497,13 +1155,21 @@ public class TCPServer {
                     }
                     try {
                         if (handleChannelRead() == -1) {
-                            CONSOLE_LOG.info("channel close by client {}", channelContext.getId());
+                            if (CONSOLE_LOG.isInfoEnabled()) {
+                                CONSOLE_LOG.info("channel close by client {}", channelContext.getId());
+                            }
                             release();
+                        } else {
+                            // send what the handler wrote outside of read(buf) (such as the handshake path)
+                            channelContext.flush();
                         }
                     } catch (Throwable throwable) {
                         if (channelConfig.isPrintReadErrorLog()) {
                             throwable.printStackTrace();
                         }
+                        if (metrics != null) {
+                            metrics.incrementReadErrors();
+                        }
                         release();
                     }
                 } catch (Exception e) {
@@ -518,10 +1184,47 @@ public class TCPServer {
                     }
                 }
             } finally {
-                runFlag = false;
+                channelContext.runnerThread = null;
+                if (metrics != null) {
+                    metrics.addRead(System.nanoTime() - begin);
+                }
+                if (closed || channelContext.isClosed()) {
+                    releaseBuffers();
+                    runFlag = false;
+                } else {
+                    runFlag = false;
+                    if (!isReadSuspended()) {
+                        // bytes arriving from now on are reported again by the worker
+                        channelContext.resumeRead();
+                    }
+                    if (resumeRequested) {
+                        channelContext.worker.execute(resumeTask);
+                    }
+                }
             }
         }
 
+        /**
+         * run the runner again as if the channel were readable, callable by any thread
+         */
+        final void resume() {
+            resumeRequested = true;
+            channelContext.worker.execute(resumeTask);
+        }
+
+        /**
+         * whether OP_READ stays off after run() until resume() is called
+         */
+        protected boolean isReadSuspended() {
+            return false;
+        }
+
+        /**
+         * release the pooled buffers held by the connection
+         */
+        protected void releaseBuffers() {
+        }
+
         final void before() {
             if (!ready) {
                 try {
@@ -537,21 +1240,24 @@ public class TCPServer {
         }
 
         protected int handleChannelRead() throws IOException {
-            // size
-            int buffsize = channelConfig.getReadBufferSize();
-            // if cache buf ?
-            ByteBuffer buf = ByteBuffer.allocate(buffsize);
-            int size;
-            do {
-                size = channelContext.channelRead(buf);
-                if (size == -1) {
-                    return -1;
-                }
-                buf.flip();
-                read(buf);
-                buf.clear();
-            } while (size == buffsize);
-            return 0;
+            ByteBufferAllocator bufferAllocator = channelConfig.getBufferAllocator();
+            ByteBuffer buf = bufferAllocator.allocate(channelConfig.getReadBufferSize());
+            try {
+                boolean full;
+                do {
+                    int size = channelContext.channelRead(buf);
+                    if (size == -1) {
+                        return -1;
+                    }
+                    full = !buf.hasRemaining();
+                    ((Buffer) buf).flip();
+                    read(buf);
+                    ((Buffer) buf).clear();
+                } while (full);
+                return 0;
+            } finally {
+                bufferAllocator.release(buf);
+            }
         }
 
         // close
@@ -565,25 +1271,32 @@ public class TCPServer {
         }
 
         /**
-         * plain application buf that is read already
+         * <p> plain application buf that is read already </p>
+         * <p> What the handler wrote is flushed before returning: the written buffers may be (views of) buf, which is cleared for the next read. </p>
          *
          * @param buf
          */
         public final void read(ByteBuffer buf) throws IOException {
             if (buf.hasRemaining()) {
-                if (channelConfig.isPrintApplicationMessage()) {
-                    byte[] data = Arrays.copyOf(buf.array(), buf.limit());
+                if (channelConfig.isPrintApplicationMessage() && CONSOLE_LOG.isInfoEnabled()) {
+                    byte[] data = new byte[buf.remaining()];
+                    buf.duplicate().get(data);
                     CONSOLE_LOG.info("hex \n{}", Utils.printHexString(data, ' '));
                 }
+                handlerFailed = false;
                 try {
                     channelReader.read(channelContext, buf, channelHandlerDelegation);
                 } catch (Throwable throwable) {
+                    if (!handlerFailed && channelConfig.metrics != null) {
+                        channelConfig.metrics.incrementDecodeErrors();
+                    }
                     channelHandler.onException(channelContext, throwable);
                     if (throwable instanceof RuntimeException) {
                         throw (RuntimeException) throwable;
                     }
                     throw (IOException) throwable;
                 }
+                channelContext.flush();
             }
         }
 
@@ -597,30 +1310,227 @@ public class TCPServer {
     }
 
     static final class SSLChannelContext extends ChannelContext {
+        // max plaintext bytes of a TLS record
+        static final int MAX_RECORD_PLAINTEXT = 16384;
+        // records wrapped into one outbound buffer (the largest pooled size class by default)
+        static final int MAX_WRAP_BUFFER_SIZE = 64 << 10;
+        // flush marker of the crypto lane
+        static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
         final SSLEngineContext sslEngineContext;
 
-        public SSLChannelContext(SocketChannel channel, SSLEngineContext sslEngineContext) throws IOException {
+        // crypto offload (TCPServer.sslCryptoOffload), null if the writing thread wraps
+        final Executor cryptoExecutor;
+        // plaintext copies, file segments and flush markers in write order, wrapped by one pool thread at a time
+        private final Queue<Object> cryptoLane;
+        private final AtomicBoolean cryptoScheduled;
+        // plaintext bytes in the lane
+        private final AtomicLong cryptoPendingBytes;
+        // region of the file being sent, the writes that follow are appended to it until it is done (guarded by outboundBuffer)
+        private SSLRegion region;
+        private final Runnable cryptoTask = new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    drainCryptoLane();
+                    cryptoScheduled.set(false);
+                    // a buffer added after the drain but before the reset is not lost
+                } while (!cryptoLane.isEmpty() && cryptoScheduled.compareAndSet(false, true));
+            }
+        };
+
+        public SSLChannelContext(SocketChannel channel, SSLEngineContext sslEngineContext, Executor cryptoExecutor) throws IOException {
             super(channel);
             this.sslEngineContext = sslEngineContext;
+            this.cryptoExecutor = cryptoExecutor;
+            if (cryptoExecutor != null) {
+                cryptoLane = new ConcurrentLinkedQueue<Object>();
+                cryptoScheduled = new AtomicBoolean();
+                cryptoPendingBytes = new AtomicLong();
+            } else {
+                cryptoLane = null;
+                cryptoScheduled = null;
+                cryptoPendingBytes = null;
+            }
         }
 
+        /**
+         * <p> Wrap all the remaining bytes of buf into as many TLS records as needed (16KB of plaintext at most per record). </p>
+         * <p> Consecutive records are wrapped into the same pooled buffer, the buffers are owned by the outbound queue (released when written)
+         * and sent by flush() with one gathering write. buf can be reused once this method returns. </p>
+         * <p> With the crypto offload, buf is copied into the lane of the connection and wrapped by a pool thread. </p>
+         */
         @Override
-        public int write(ByteBuffer buf) throws IOException {
+        public int write(ByteBuffer buf, boolean flush) throws IOException {
             if (sslEngineContext.isDisabled()) {
-                channelWrite(buf);
-                buf.clear();
+                return super.write(buf, flush);
+            }
+            int len = buf.remaining();
+            if (cryptoExecutor != null) {
+                if (len > 0) {
+                    ByteBuffer copy = sslEngineContext.bufferAllocator.allocate(len);
+                    copy.put(buf);
+                    ((Buffer) copy).flip();
+                    cryptoPendingBytes.addAndGet(len);
+                    offerCryptoLane(copy);
+                }
             } else {
-                SSLEngine sslEngine = sslEngineContext.sslEngine;
-                ByteBuffer packetOutBuf = sslEngineContext.packetOutBuf;
-                packetOutBuf.clear();
-                SSLEngineResult res = sslEngine.wrap(buf, packetOutBuf);
-                if (res.getStatus() != SSLEngineResult.Status.OK) {
-                    throw new SocketException("Unexpected exception, SSL encryption failed");
+                wrap(buf);
+            }
+            if (flush) {
+                flush();
+            }
+            return len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (cryptoExecutor != null && cryptoPendingBytes.get() > 0) {
+                // flushed by the lane after the plaintext written before
+                offerCryptoLane(FLUSH);
+            } else {
+                // everything written is already wrapped
+                super.flush();
+            }
+        }
+
+        @Override
+        protected long pendingPlaintextBytes() {
+            return cryptoExecutor == null ? 0 : cryptoPendingBytes.get();
+        }
+
+        private void offerCryptoLane(Object entry) {
+            cryptoLane.add(entry);
+            if (cryptoScheduled.compareAndSet(false, true)) {
+                cryptoExecutor.execute(cryptoTask);
+            }
+        }
+
+        // called by one pool thread at a time
+        private void drainCryptoLane() {
+            ByteBufferAllocator bufferAllocator = sslEngineContext.bufferAllocator;
+            Object entry;
+            while ((entry = cryptoLane.poll()) != null) {
+                if (entry == FLUSH) {
+                    try {
+                        super.flush();
+                    } catch (Throwable throwable) {
+                        closeQuietly();
+                    }
+                    continue;
+                }
+                if (entry instanceof FileRegion) {
+                    FileRegion segment = (FileRegion) entry;
+                    // read by the region from now on
+                    long count = segment.remaining;
+                    if (!isClosed()) {
+                        addFileSegment(segment);
+                    }
+                    cryptoPendingBytes.addAndGet(-count);
+                    continue;
+                }
+                ByteBuffer buf = (ByteBuffer) entry;
+                int len = buf.remaining();
+                try {
+                    if (!isClosed()) {
+                        wrap(buf);
+                    }
+                } catch (Throwable throwable) {
+                    // the records after a failed one would be rejected by the peer
+                    closeQuietly();
+                } finally {
+                    bufferAllocator.release(buf);
+                    cryptoPendingBytes.addAndGet(-len);
+                }
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (Throwable throwable) {
+            }
+        }
+
+        private void wrap(ByteBuffer buf) throws IOException {
+            SSLEngine sslEngine = sslEngineContext.sslEngine;
+            ByteBufferAllocator bufferAllocator = sslEngineContext.bufferAllocator;
+            int packetSize = sslEngine.getSession().getPacketBufferSize();
+            // records are queued in the order they are wrapped (sequence numbers)
+            synchronized (sslEngineContext) {
+                synchronized (outboundBuffer) {
+                    if (region != null && !region.isDone()) {
+                        // wrapped after the file by the region
+                        ByteBuffer copy = bufferAllocator.allocate(buf.remaining());
+                        copy.put(buf);
+                        ((Buffer) copy).flip();
+                        outboundBuffer.addRegionBytes(region.add(copy));
+                        return;
+                    }
+                }
+                do {
+                    int records = (buf.remaining() + MAX_RECORD_PLAINTEXT - 1) / MAX_RECORD_PLAINTEXT;
+                    ByteBuffer out = bufferAllocator.allocate(Math.max(Math.min(records * packetSize, MAX_WRAP_BUFFER_SIZE), packetSize));
+                    try {
+                        do {
+                            SSLEngineResult res = sslEngine.wrap(buf, out);
+                            if (res.getStatus() != SSLEngineResult.Status.OK) {
+                                throw new SocketException("Unexpected exception, SSL encryption failed: " + res.getStatus());
+                            }
+                        } while (buf.hasRemaining() && out.remaining() >= packetSize);
+                    } catch (IOException e) {
+                        bufferAllocator.release(out);
+                        throw e;
+                    } catch (RuntimeException e) {
+                        bufferAllocator.release(out);
+                        throw e;
+                    }
+                    ((Buffer) out).flip();
+                    synchronized (outboundBuffer) {
+                        outboundBuffer.addUnflushed(out, bufferAllocator);
+                    }
+                } while (buf.hasRemaining());
+            }
+        }
+
+        /**
+         * <p> No transferTo over TLS: the file is queued as a region (in order with the other writes) which reads and wraps the next chunk
+         * only when the records of the previous one are written, one wrap buffer of the file at most is held in memory. </p>
+         * <p> The writes that follow are wrapped after the file (see SSLRegion). </p>
+         */
+        @Override
+        public long sendFile(FileChannel file, long position, long count) throws IOException {
+            if (sslEngineContext.isDisabled()) {
+                return super.sendFile(file, position, count);
+            }
+            if (position < 0 || count < 0) {
+                throw new IllegalArgumentException("position " + position + ", count " + count);
+            }
+            if (count > 0) {
+                FileRegion segment = new FileRegion(file, position, count);
+                if (cryptoExecutor != null) {
+                    cryptoPendingBytes.addAndGet(count);
+                    offerCryptoLane(segment);
+                } else {
+                    addFileSegment(segment);
+                }
+            }
+            flush();
+            return count;
+        }
+
+        private void addFileSegment(FileRegion segment) {
+            // no wrap in progress, the records wrapped before are queued
+            synchronized (sslEngineContext) {
+                synchronized (outboundBuffer) {
+                    if (region != null && !region.isDone()) {
+                        outboundBuffer.addRegionBytes(region.add(segment));
+                    } else {
+                        region = new SSLRegion(sslEngineContext);
+                        region.add(segment);
+                        outboundBuffer.addUnflushed(region);
+                    }
                 }
-                packetOutBuf.flip();
-                channelWrite(packetOutBuf);
             }
-            return 0;
         }
 
         @Override
@@ -669,6 +1579,10 @@ public class TCPServer {
                             tlen -= limit;
                             // 切换为写模式
                             applicationInBuf.clear();
+                            if (limit == 0 && bytesNum == 0) {
+                                // no complete record yet
+                                awaitRead();
+                            }
                         }
                     }
                 }
@@ -688,44 +1602,200 @@ public class TCPServer {
                 return null;
             }
         }
+
+        /**
+         * <p> File segments and plaintext copies queued as one outbound entry, wrapped in order when the region is written (flush or OP_WRITE). </p>
+         * <p> The next chunk is read and wrapped only when the records of the previous one are written. </p>
+         * <p> Only called with the outboundBuffer lock. While the region is not done, SSLChannelContext appends to it instead of wrapping,
+         * so the engine is only used by the region. </p>
+         */
+        static final class SSLRegion extends OutboundRegion {
+
+            final SSLEngineContext sslEngineContext;
+            // FileRegion segments and plaintext copies (pooled) in write order
+            private final ArrayDeque<Object> sources = new ArrayDeque<Object>();
+            // plaintext of the current file chunk
+            private ByteBuffer chunk;
+            // records of the current chunk not yet written
+            private ByteBuffer wrapped;
+
+            SSLRegion(SSLEngineContext sslEngineContext) {
+                this.sslEngineContext = sslEngineContext;
+            }
+
+            long add(FileRegion segment) {
+                sources.add(segment);
+                remaining += segment.remaining;
+                return segment.remaining;
+            }
+
+            long add(ByteBuffer plaintext) {
+                int len = plaintext.remaining();
+                sources.add(plaintext);
+                remaining += len;
+                return len;
+            }
+
+            @Override
+            long transferTo(SocketChannel channel) throws IOException {
+                long written = 0;
+                while (wrapped != null || wrapNext()) {
+                    int n = channel.write(wrapped);
+                    written += n;
+                    remaining -= n;
+                    if (wrapped.hasRemaining()) {
+                        // the socket send buffer is full
+                        break;
+                    }
+                    sslEngineContext.bufferAllocator.release(wrapped);
+                    wrapped = null;
+                }
+                return written;
+            }
+
+            /**
+             * wrap the next records (one wrap buffer) of the head source
+             *
+             * @return false if no source is left
+             * @throws IOException
+             */
+            private boolean wrapNext() throws IOException {
+                Object source = sources.peek();
+                if (source == null) {
+                    return false;
+                }
+                SSLEngine sslEngine = sslEngineContext.sslEngine;
+                ByteBufferAllocator bufferAllocator = sslEngineContext.bufferAllocator;
+                int packetSize = sslEngine.getSession().getPacketBufferSize();
+                int maxRecords = Math.max(MAX_WRAP_BUFFER_SIZE / packetSize, 1);
+                ByteBuffer plaintext;
+                if (source instanceof FileRegion) {
+                    FileRegion segment = (FileRegion) source;
+                    if (chunk == null) {
+                        chunk = bufferAllocator.allocate(maxRecords * MAX_RECORD_PLAINTEXT);
+                    }
+                    ((Buffer) chunk).clear();
+                    ((Buffer) chunk).limit((int) Math.min(maxRecords * MAX_RECORD_PLAINTEXT, segment.remaining));
+                    int n = segment.file.read(chunk, segment.position);
+                    if (n < 0) {
+                        throw new IOException("file truncated, " + segment.remaining + " bytes missing at " + segment.position);
+                    }
+                    segment.position += n;
+                    segment.remaining -= n;
+                    ((Buffer) chunk).flip();
+                    plaintext = chunk;
+                } else {
+                    plaintext = (ByteBuffer) source;
+                }
+                int len = plaintext.remaining();
+                int records = Math.min((len + MAX_RECORD_PLAINTEXT - 1) / MAX_RECORD_PLAINTEXT, maxRecords);
+                ByteBuffer out = bufferAllocator.allocate(Math.max(records * packetSize, packetSize));
+                try {
+                    do {
+                        SSLEngineResult res = sslEngine.wrap(plaintext, out);
+                        if (res.getStatus() != SSLEngineResult.Status.OK) {
+                            throw new SocketException("Unexpected exception, SSL encryption failed: " + res.getStatus());
+                        }
+                    } while (plaintext.hasRemaining() && out.remaining() >= packetSize);
+                } catch (IOException e) {
+                    bufferAllocator.release(out);
+                    throw e;
+                } catch (RuntimeException e) {
+                    bufferAllocator.release(out);
+                    throw e;
+                }
+                ((Buffer) out).flip();
+                if (plaintext == chunk) {
+                    // the whole chunk fits in the wrap buffer
+                    if (((FileRegion) source).isDone()) {
+                        sources.poll();
+                    }
+                } else if (!plaintext.hasRemaining()) {
+                    bufferAllocator.release((ByteBuffer) sources.poll());
+                }
+                remaining += out.remaining() - (len - plaintext.remaining());
+                wrapped = out;
+                return true;
+            }
+
+            @Override
+            void release() {
+                ByteBufferAllocator bufferAllocator = sslEngineContext.bufferAllocator;
+                if (wrapped != null) {
+                    bufferAllocator.release(wrapped);
+                    wrapped = null;
+                }
+                if (chunk != null) {
+                    bufferAllocator.release(chunk);
+                    chunk = null;
+                }
+                Object source;
+                while ((source = sources.poll()) != null) {
+                    if (source instanceof ByteBuffer) {
+                        bufferAllocator.release((ByteBuffer) source);
+                    }
+                }
+                remaining = 0;
+            }
+        }
     }
 
     static class SocketChannelSSLRunner extends SocketChannelRunner {
 
+        // waiting for the first bytes (tls or plaintext)
+        static final int HANDSHAKE_DETECT = 0;
+        // advanced on every readiness event until finished
+        static final int HANDSHAKE_RUNNING = 1;
+        // delegated tasks running on the task pool, OP_READ is off until they complete
+        static final int HANDSHAKE_TASK = 2;
+        static final int HANDSHAKE_DONE = 3;
+
         private boolean isSSL;
-        private boolean finishHandShake;
-        SSLEngineContext sslEngineContext;
+        // written by the task pool before resume()
+        private volatile int handshakeState = HANDSHAKE_DETECT;
+        // a session created before the handshake began is a resumed one
+        private long handshakeBeginTime;
+        final SSLEngineContext sslEngineContext;
+        final Executor sslTaskExecutor;
 
-        SocketChannelSSLRunner(SocketChannel channel, ChannelConfig channelConfig, SSLContextWrapper sslContextWrapper) throws IOException {
-            super(new SSLChannelContext(channel, new SSLEngineContext(sslContextWrapper)), channelConfig);
+        SocketChannelSSLRunner(SocketChannel channel, ChannelConfig channelConfig, HashedWheelTimer timer, SSLContextWrapper sslContextWrapper, ByteBufferAllocator bufferAllocator, Executor sslTaskExecutor, Executor cryptoExecutor) throws IOException {
+            super(new SSLChannelContext(channel, new SSLEngineContext(sslContextWrapper, bufferAllocator, (InetSocketAddress) channel.getRemoteAddress()), cryptoExecutor), channelConfig, timer);
+            this.sslEngineContext = ((SSLChannelContext) channelContext).sslEngineContext;
+            this.sslTaskExecutor = sslTaskExecutor;
         }
 
         @Override
-        protected void beforeReady() {
-            if (!finishHandShake) {
-                boolean isSSL = true;
-                SSLChannelContext sslChannelContext = (SSLChannelContext) channelContext;
-                this.sslEngineContext = sslChannelContext.sslEngineContext;
+        protected void releaseBuffers() {
+            sslEngineContext.releaseInputBuffers();
+        }
+
+        @Override
+        protected boolean isReadSuspended() {
+            return handshakeState == HANDSHAKE_TASK;
+        }
+
+        protected int handleChannelRead() throws IOException {
+            if (handshakeState != HANDSHAKE_DONE) {
+                int handShakeFlag;
                 try {
-                    int handShakeFlag = sslHandShake(sslEngineContext);
-                    if (handShakeFlag == -1) {
-                        CONSOLE_LOG.info("channel close by client");
-                        release();
-                        return;
+                    handShakeFlag = sslHandShake();
+                } catch (IOException e) {
+                    if (channelConfig.isPrintSSLErrorLog()) {
+                        e.printStackTrace();
                     }
-                    isSSL = handShakeFlag == 1;
-                } catch (Throwable throwable) {
+                    return -1;
+                } catch (RuntimeException e) {
                     if (channelConfig.isPrintSSLErrorLog()) {
-                        throwable.printStackTrace();
+                        e.printStackTrace();
                     }
-                } finally {
-                    this.finishHandShake = true;
+                    return -1;
                 }
-                this.isSSL = isSSL;
+                if (handShakeFlag != 1) {
+                    // -1 closed, 0 waiting for bytes or delegated tasks
+                    return handShakeFlag;
+                }
+                // records received with the last handshake message are unwrapped below
             }
-        }
-
-        protected int handleChannelRead() throws IOException {
             if (isSSL) {
                 SSLEngine sslEngine = sslEngineContext.sslEngine;
                 ByteBuffer packetInBuf = sslEngineContext.packetInBuf;
@@ -737,10 +1807,7 @@ public class TCPServer {
                 } else {
                     packetInBuf.flip();
                     SSLEngineResult res;
-                    int position = applicationInBuf.position();
-                    if (position > 0) {
-                        applicationInBuf.compact();
-                    }
+                    // applicationInBuf stays in write mode between two reads, bytes unwrapped during the handshake are kept
                     do {
                         res = sslEngine.unwrap(packetInBuf, applicationInBuf);
                     } while (res.getStatus() == SSLEngineResult.Status.OK);
@@ -777,80 +1844,150 @@ public class TCPServer {
          * @return
          */
         boolean isMaybePlaintext(ByteBuffer buf) {
-            byte firstByte = buf.array()[0];
+            byte firstByte = buf.get(0);
             if (firstByte != 22) {
                 return true;
             }
             return false;
         }
 
-        private int sslHandShake(SSLEngineContext sslEngineContext) throws Exception {
+        /**
+         * <p> Advance the handshake with the bytes available now, never waits: </p>
+         * <p> the runner returns when more bytes are needed (the next OP_READ runs it again)
+         * or when the delegated tasks are submitted (resumed by the task pool). </p>
+         *
+         * @return -1 closed, 0 not finished, 1 finished (tls), 2 finished (plaintext, bytes delivered)
+         * @throws IOException
+         */
+        private int sslHandShake() throws IOException {
             ByteBuffer packetInBuf = sslEngineContext.packetInBuf;
-            int size = channelContext.channelRead(packetInBuf);
-            while (size == 0) {
-                Thread.sleep(5);
-                size = channelContext.channelRead(packetInBuf);
-            }
-            if (size == -1) {
-                return -1;
-            }
-            if (isMaybePlaintext(packetInBuf)) {
-                sslEngineContext.setDisabled(true);
-                int capacity = packetInBuf.capacity();
-                do {
-                    packetInBuf.flip();
-                    read(packetInBuf);
-                    if (size < capacity) {
+            switch (handshakeState) {
+                case HANDSHAKE_DETECT: {
+                    int size = channelContext.channelRead(packetInBuf);
+                    if (size == -1) {
+                        return -1;
+                    }
+                    if (packetInBuf.position() == 0) {
                         return 0;
                     }
-                    packetInBuf.clear();
-                    size = channelContext.channelRead(packetInBuf);
-                    if (size == -1) return -1;
-                } while (true);
+                    if (isMaybePlaintext(packetInBuf)) {
+                        sslEngineContext.setDisabled(true);
+                        handshakeState = HANDSHAKE_DONE;
+                        boolean full = !packetInBuf.hasRemaining();
+                        ((Buffer) packetInBuf).flip();
+                        read(packetInBuf);
+                        ((Buffer) packetInBuf).clear();
+                        // more bytes may be pending in the socket
+                        return full ? super.handleChannelRead() : 2;
+                    }
+                    handshakeBeginTime = System.currentTimeMillis();
+                    sslEngineContext.sslEngine.beginHandshake();
+                    handshakeState = HANDSHAKE_RUNNING;
+                    return advanceHandshake();
+                }
+                case HANDSHAKE_RUNNING:
+                    return advanceHandshake();
+                case HANDSHAKE_TASK:
+                    // the tasks resume the runner when they complete
+                    return 0;
+                default:
+                    return 1;
             }
-            boolean firstFlag = true;
+        }
+
+        private int advanceHandshake() throws IOException {
             SSLEngine sslEngine = sslEngineContext.sslEngine;
+            ByteBuffer packetInBuf = sslEngineContext.packetInBuf;
             ByteBuffer applicationInBuf = sslEngineContext.applicationInBuf;
             ByteBuffer packetOutBuf = sslEngineContext.packetOutBuf;
             ByteBuffer applicationOutBuf = sslEngineContext.applicationOutBuf;
-
-            sslEngine.beginHandshake();
             SSLEngineResult.HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
             SSLEngineResult res;
-            while (handshakeStatus != SSLEngineResult.HandshakeStatus.FINISHED && handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            while (true) {
                 switch (handshakeStatus) {
                     case NEED_UNWRAP:
-                        do {
-                            if (firstFlag) {
-                                firstFlag = false;
-                            } else {
-                                channelContext.channelRead(packetInBuf);
+                        ((Buffer) packetInBuf).flip();
+                        res = sslEngine.unwrap(packetInBuf, applicationInBuf);
+                        packetInBuf.compact();
+                        if (res.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            if (!packetInBuf.hasRemaining()) {
+                                throw new SocketException("ssl record exceeds the packet buffer size " + packetInBuf.capacity());
                             }
-                            packetInBuf.flip();
-                            res = sslEngine.unwrap(packetInBuf, applicationInBuf);
-                            packetInBuf.compact();
-                            handshakeStatus = res.getHandshakeStatus();
-                        } while (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_UNWRAP);
+                            int size = channelContext.channelRead(packetInBuf);
+                            if (size == -1) {
+                                return -1;
+                            }
+                            if (size == 0) {
+                                // wait for the next OP_READ
+                                return 0;
+                            }
+                            break;
+                        }
+                        if (res.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            return -1;
+                        }
+                        handshakeStatus = res.getHandshakeStatus();
                         break;
                     case NEED_WRAP:
-                        packetOutBuf.clear();
+                        ((Buffer) packetOutBuf).clear();
                         res = sslEngine.wrap(applicationOutBuf, packetOutBuf);
-                        handshakeStatus = res.getHandshakeStatus();
-                        if (res.getStatus() == SSLEngineResult.Status.OK) {
-                            packetOutBuf.flip();
+                        ((Buffer) packetOutBuf).flip();
+                        if (packetOutBuf.hasRemaining()) {
+                            // queued if the socket is full, flushed on OP_WRITE
                             channelContext.channelWrite(packetOutBuf);
                         }
+                        if (res.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            return -1;
+                        }
+                        handshakeStatus = res.getHandshakeStatus();
                         break;
                     case NEED_TASK:
+                        handshakeState = HANDSHAKE_TASK;
+                        // already suspended by the worker unless in EVENT_LOOP mode
+                        channelContext.suspendRead();
+                        runDelegatedTasks();
+                        return 0;
+                    case FINISHED:
+                    case NOT_HANDSHAKING:
+                        handshakeState = HANDSHAKE_DONE;
+                        isSSL = true;
+                        if (sslEngine.getSession().getCreationTime() < handshakeBeginTime) {
+                            channelConfig.resumedHandshakes.incrementAndGet();
+                        } else {
+                            channelConfig.fullHandshakes.incrementAndGet();
+                        }
+                        return 1;
+                    default:
+                        // NEED_UNWRAP_AGAIN (JDK9+) is DTLS only
+                        throw new SocketException("unexpected handshake status " + handshakeStatus);
+                }
+            }
+        }
+
+        /**
+         * the tasks of one engine run one after another on the shared pool, then the runner is resumed
+         */
+        private void runDelegatedTasks() {
+            final SSLEngine sslEngine = sslEngineContext.sslEngine;
+            sslTaskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
                         Runnable task;
                         while ((task = sslEngine.getDelegatedTask()) != null) {
-                            new Thread(task).start();
+                            task.run();
                         }
-                        handshakeStatus = sslEngine.getHandshakeStatus();
-                        break;
+                    } catch (Throwable throwable) {
+                        // the engine reports the failure on the next wrap/unwrap
+                        if (channelConfig.isPrintSSLErrorLog()) {
+                            throwable.printStackTrace();
+                        }
+                    } finally {
+                        handshakeState = HANDSHAKE_RUNNING;
+                        resume();
+                    }
                 }
-            }
-            return 1;
+            });
         }
     }
 
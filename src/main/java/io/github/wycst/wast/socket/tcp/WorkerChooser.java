@@ -0,0 +1,71 @@
+package io.github.wycst.wast.socket.tcp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Choose the worker (selector thread) of an accepted connection. </p>
+ * <p> Called concurrently by the acceptor threads, implementations must be thread safe. </p>
+ *
+ * @Date 2026/10/17
+ */
+public interface WorkerChooser {
+
+    /**
+     * cycle over the workers (default)
+     */
+    WorkerChooser ROUND_ROBIN = new WorkerChooser() {
+        final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public int choose(WorkerLoad[] workerLoads) {
+            return (next.getAndIncrement() & Integer.MAX_VALUE) % workerLoads.length;
+        }
+    };
+
+    /**
+     * the worker with the fewest connections
+     */
+    WorkerChooser LEAST_CONNECTIONS = new WorkerChooser() {
+        @Override
+        public int choose(WorkerLoad[] workerLoads) {
+            int index = 0;
+            long min = Long.MAX_VALUE;
+            for (WorkerLoad workerLoad : workerLoads) {
+                long connections = workerLoad.getConnections();
+                if (connections < min) {
+                    min = connections;
+                    index = workerLoad.getIndex();
+                }
+            }
+            return index;
+        }
+    };
+
+    /**
+     * the worker with the fewest bytes waiting to be written (the fewest connections if equal),
+     * keeps long-lived heavy connections apart
+     */
+    WorkerChooser LEAST_PENDING_BYTES = new WorkerChooser() {
+        @Override
+        public int choose(WorkerLoad[] workerLoads) {
+            int index = 0;
+            long minPendingBytes = Long.MAX_VALUE, minConnections = Long.MAX_VALUE;
+            for (WorkerLoad workerLoad : workerLoads) {
+                long pendingBytes = workerLoad.getPendingBytes();
+                long connections = workerLoad.getConnections();
+                if (pendingBytes < minPendingBytes || (pendingBytes == minPendingBytes && connections < minConnections)) {
+                    minPendingBytes = pendingBytes;
+                    minConnections = connections;
+                    index = workerLoad.getIndex();
+                }
+            }
+            return index;
+        }
+    };
+
+    /**
+     * @param workerLoads load of each worker (index i is worker i)
+     * @return index of the chosen worker
+     */
+    int choose(WorkerLoad[] workerLoads);
+}
@@ -0,0 +1,55 @@
+package io.github.wycst.wast.socket.tcp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Load counters of a worker (selector thread), updated lock-free by the channels registered on it. </p>
+ *
+ * @Date 2026/10/17
+ */
+public final class WorkerLoad {
+
+    final int index;
+    final AtomicLong connections = new AtomicLong();
+    final AtomicLong pendingBytes = new AtomicLong();
+    // only written by the worker thread
+    volatile long selectCount;
+
+    WorkerLoad(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return index of the worker
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return connections currently registered on the worker
+     */
+    public long getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return bytes written by the channels of the worker and not yet accepted by their sockets
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * @return select calls returned on the worker (diagnostic of wakeups)
+     */
+    public long getSelectCount() {
+        return selectCount;
+    }
+
+    void addPendingBytes(long delta) {
+        if (delta != 0) {
+            pendingBytes.addAndGet(delta);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.github.wycst.wast.socket.util;
+
+import io.github.wycst.wast.socket.exception.SocketException;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * <p> Hashed timing wheel shared by all the channels of a server. </p>
+ * <p> Schedule and cancel are O(1) (lock-free queues drained by the worker thread), all the timeouts of a bucket expire in one pass on each tick. </p>
+ * <p> The precision is one tick, expired tasks run on the single worker thread so they must not block. </p>
+ *
+ * @Date 2026/10/17
+ */
+public final class HashedWheelTimer {
+
+    static final int STATE_INIT = 0;
+    static final int STATE_STARTED = 1;
+    static final int STATE_SHUTDOWN = 2;
+    // max timeouts transferred into the wheel per tick
+    static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    final String name;
+    final long tickNanos;
+    final Bucket[] wheel;
+    final int mask;
+    final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    volatile int state = STATE_INIT;
+    volatile long startTime;
+    Thread workerThread;
+    long tick;
+
+    public HashedWheelTimer(String name) {
+        this(name, 100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param name          worker thread name
+     * @param tickDuration  duration of one tick
+     * @param unit          unit of tickDuration
+     * @param ticksPerWheel bucket count (rounded up to a power of two)
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        this.name = name;
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), 1000000L);
+        int n = 1;
+        while (n < ticksPerWheel && n < (1 << 20)) {
+            n <<= 1;
+        }
+        this.wheel = new Bucket[n];
+        for (int i = 0; i < n; ++i) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = n - 1;
+    }
+
+    /**
+     * schedule a task executed once after the given delay
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return the timeout handle, cancel it to discard the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        task.getClass();
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    void start() {
+        if (state != STATE_STARTED) {
+            synchronized (this) {
+                if (state == STATE_INIT) {
+                    startTime = System.nanoTime();
+                    workerThread = new Thread(new Worker(), name);
+                    workerThread.setDaemon(true);
+                    workerThread.start();
+                    state = STATE_STARTED;
+                } else if (state == STATE_SHUTDOWN) {
+                    throw new SocketException("timer " + name + " is stopped");
+                }
+            }
+        }
+    }
+
+    /**
+     * stop the worker thread, the timeouts not expired are discarded
+     */
+    public synchronized void stop() {
+        int oldState = state;
+        state = STATE_SHUTDOWN;
+        if (oldState == STATE_STARTED) {
+            workerThread.interrupt();
+        }
+    }
+
+    public boolean isStopped() {
+        return state == STATE_SHUTDOWN;
+    }
+
+    final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (state != STATE_SHUTDOWN) {
+                long currentTime = waitForNextTick();
+                if (currentTime < 0) break;
+                processCancelledTimeouts();
+                transferTimeoutsToBuckets();
+                wheel[(int) (tick & mask)].expireTimeouts(currentTime);
+                ++tick;
+            }
+            pendingTimeouts.clear();
+            cancelledTimeouts.clear();
+        }
+
+        private long waitForNextTick() {
+            long deadline = tickNanos * (tick + 1);
+            while (true) {
+                long currentTime = System.nanoTime() - startTime;
+                long sleepMillis = (deadline - currentTime + 999999) / 1000000;
+                if (sleepMillis <= 0) {
+                    return currentTime;
+                }
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    if (state == STATE_SHUTDOWN) {
+                        return -1;
+                    }
+                }
+            }
+        }
+
+        private void transferTimeoutsToBuckets() {
+            for (int i = 0; i < MAX_TRANSFER_PER_TICK; ++i) {
+                Timeout timeout = pendingTimeouts.poll();
+                if (timeout == null) break;
+                if (timeout.state != Timeout.ST_INIT) continue;
+                long calculated = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // already expired timeouts are put into the current bucket
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void processCancelledTimeouts() {
+            Timeout timeout;
+            while ((timeout = cancelledTimeouts.poll()) != null) {
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+    }
+
+    /**
+     * doubly linked list of timeouts, only accessed by the worker thread
+     */
+    static final class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expireTimeouts(long currentTime) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= currentTime) {
+                        timeout.expire();
+                    }
+                } else if (timeout.state == Timeout.ST_CANCELLED) {
+                    remove(timeout);
+                } else {
+                    --timeout.remainingRounds;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                if (timeout == tail) {
+                    head = tail = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * handle of a scheduled task
+     */
+    public static final class Timeout implements ScheduledFuture<Object> {
+
+        static final int ST_INIT = 0;
+        static final int ST_CANCELLED = 1;
+        static final int ST_EXPIRED = 2;
+        static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        final HashedWheelTimer timer;
+        final Runnable task;
+        final long deadline;
+        volatile int state = ST_INIT;
+        volatile boolean completed;
+
+        long remainingRounds;
+        Timeout next;
+        Timeout prev;
+        Bucket bucket;
+
+        Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            } finally {
+                done();
+            }
+        }
+
+        private synchronized void done() {
+            completed = true;
+            notifyAll();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.cancelledTimeouts.add(this);
+            done();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return completed;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - timer.startTime), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (o == this) return 0;
+            long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+
+        @Override
+        public synchronized Object get() throws InterruptedException, ExecutionException {
+            while (!completed) {
+                wait();
+            }
+            if (state == ST_CANCELLED) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long remaining = unit.toNanos(timeout);
+            long deadline = System.nanoTime() + remaining;
+            while (!completed) {
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            if (state == ST_CANCELLED) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+    }
+}
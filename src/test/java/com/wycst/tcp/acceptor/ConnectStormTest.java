@@ -0,0 +1,73 @@
+package com.wycst.tcp.acceptor;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Reconnect storm: many client threads open connections as fast as possible, measure accepts/sec with 1 and N acceptors. </p>
+ * <p> Raise the open files limit (ulimit -n) before using large numbers. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ConnectStormTest {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int connectionsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int acceptors = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        run(8093, 1, clients, connectionsPerClient);
+        run(8094, acceptors, clients, connectionsPerClient);
+    }
+
+    static void run(final int port, int acceptorNum, int clients, final int connectionsPerClient) throws Exception {
+        final AtomicInteger accepted = new AtomicInteger();
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.acceptorNum(acceptorNum).workerNum(4).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onConnected(ChannelContext channelContext) {
+                accepted.incrementAndGet();
+            }
+
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+            }
+        }).start();
+
+        final CountDownLatch latch = new CountDownLatch(clients);
+        long begin = System.nanoTime();
+        for (int i = 0; i < clients; ++i) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < connectionsPerClient; ++j) {
+                            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+                            channel.close();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        int total = clients * connectionsPerClient;
+        while (accepted.get() < total && System.nanoTime() - begin < 60000000000L) {
+            Thread.sleep(1);
+        }
+        long useNanos = System.nanoTime() - begin;
+        System.out.println("acceptors " + acceptorNum + ": " + accepted.get() + " accepts in " + useNanos / 1000000 + "ms, " + (long) (accepted.get() * 1e9 / useNanos) + " accepts/sec");
+        tcpServer.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+package com.wycst.tcp.chooser;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+import io.github.wycst.wast.socket.tcp.WorkerChooser;
+import io.github.wycst.wast.socket.tcp.WorkerLoad;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> Skewed long-lived connections: a few clients ask for large responses they never read, between idle clients. </p>
+ * <p> Prints the connections and pending bytes of each worker with round-robin, least-connections and least-pending-bytes. </p>
+ * <p> Then a reconnect storm (connections accepted in batches) with least-connections must be spread evenly over the workers. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class WorkerChooserTest {
+
+    public static void main(String[] args) throws Exception {
+        run(8095, WorkerChooser.ROUND_ROBIN, "round-robin");
+        run(8096, WorkerChooser.LEAST_CONNECTIONS, "least-connections");
+        run(8097, WorkerChooser.LEAST_PENDING_BYTES, "least-pending-bytes");
+        burst(8110, 400);
+    }
+
+    static void burst(int port, int connections) throws Exception {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.workerNum(4).workerChooser(WorkerChooser.LEAST_CONNECTIONS).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+            }
+        }).start();
+        List<SocketChannel> channels = new ArrayList<SocketChannel>();
+        for (int i = 0; i < connections; ++i) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress("127.0.0.1", port));
+            channels.add(channel);
+        }
+        Thread.sleep(1000);
+        StringBuilder builder = new StringBuilder("least-connections burst of ").append(connections).append(":");
+        for (WorkerLoad workerLoad : tcpServer.getWorkerLoads()) {
+            builder.append(" [worker ").append(workerLoad.getIndex()).append(" connections ").append(workerLoad.getConnections()).append("]");
+        }
+        System.out.println(builder);
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        Thread.sleep(500);
+        long open = 0;
+        for (WorkerLoad workerLoad : tcpServer.getWorkerLoads()) {
+            open += workerLoad.getConnections();
+        }
+        System.out.println("after close: " + open + " connections");
+        tcpServer.shutdown();
+    }
+
+    static void run(int port, WorkerChooser workerChooser, String name) throws Exception {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.workerNum(4).workerChooser(workerChooser).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                // 'H' asks for 4MB the client never reads
+                if (message.hasRemaining() && message.get(0) == 'H') {
+                    try {
+                        channelContext.writeAndFlush(ByteBuffer.allocate(4 << 20));
+                    } catch (IOException e) {
+                        channelContext.close();
+                    }
+                }
+            }
+        }).start();
+
+        List<SocketChannel> channels = new ArrayList<SocketChannel>();
+        // one heavy then three idle connections, round-robin puts every heavy one on the same worker
+        for (int i = 0; i < 4; ++i) {
+            SocketChannel heavy = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            heavy.write(ByteBuffer.wrap(new byte[]{'H'}));
+            channels.add(heavy);
+            Thread.sleep(100);
+            for (int j = 0; j < 3; ++j) {
+                channels.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+            }
+        }
+        Thread.sleep(500);
+        StringBuilder builder = new StringBuilder(name).append(":");
+        for (WorkerLoad workerLoad : tcpServer.getWorkerLoads()) {
+            builder.append(" [worker ").append(workerLoad.getIndex()).append(" connections ").append(workerLoad.getConnections())
+                    .append(" pending ").append(workerLoad.getPendingBytes()).append("]");
+        }
+        System.out.println(builder);
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        tcpServer.shutdown();
+    }
+}
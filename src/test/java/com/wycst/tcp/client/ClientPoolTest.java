@@ -0,0 +1,105 @@
+package com.wycst.tcp.client;
+
+import io.github.wycst.wast.socket.codec.ChannelStringCodec;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.ClientChannelPool;
+import io.github.wycst.wast.socket.tcp.RunMode;
+import io.github.wycst.wast.socket.tcp.TCPClient;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Caller threads share a pool of 4 connections (4 requests in flight per connection), then the idle connections are closed down to minIdle,
+ * and the pool reconnects after the server restarts. </p>
+ * <p> args: [callers] [requestsPerCaller] </p>
+ *
+ * @Date 2026/10/17
+ */
+public class ClientPoolTest {
+
+    public static void main(String[] args) throws Exception {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        final ChannelStringCodec codec = new ChannelStringCodec("UTF-8");
+        int port = 8107;
+        TCPServer tcpServer = startServer(port, codec);
+
+        TCPClient tcpClient = new TCPClient();
+        tcpClient.closeLogLevel();
+        tcpClient.workerNum(2).channelReader(codec).channelWriter(codec).start();
+        final ClientChannelPool pool = new ClientChannelPool(tcpClient, new InetSocketAddress("127.0.0.1", port), 4, 4);
+        pool.idleTime(1, TimeUnit.SECONDS).minIdle(1).maxWaiters(callers * 64);
+        pool.warmUp().get();
+
+        final AtomicInteger ok = new AtomicInteger(), failed = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(callers);
+        long begin = System.nanoTime();
+        for (int i = 0; i < callers; ++i) {
+            final String caller = "c" + i + "-";
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < requests; ++j) {
+                            String message = caller + j;
+                            try {
+                                String response = pool.<String>request(message).get(10, TimeUnit.SECONDS);
+                                if (("echo " + message).equals(response)) {
+                                    ok.incrementAndGet();
+                                } else {
+                                    failed.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println("ok " + ok + ", failed " + failed + ", " + ms + "ms, " + ok.get() * 1000L / ms + " req/s, connections " + pool.getConnections());
+
+        // the sweep runs every second
+        Thread.sleep(3000);
+        System.out.println("after idle: connections " + pool.getConnections());
+
+        tcpServer.shutdown();
+        Thread.sleep(500);
+        try {
+            pool.request("down").get(5, TimeUnit.SECONDS);
+            System.out.println("server down: completed ?");
+        } catch (ExecutionException e) {
+            System.out.println("server down: " + e.getCause());
+        }
+        tcpServer = startServer(port, codec);
+        System.out.println("server up: " + pool.request("up").get(5, TimeUnit.SECONDS));
+
+        pool.close();
+        tcpClient.shutdown();
+        tcpServer.shutdown();
+    }
+
+    static TCPServer startServer(int port, final ChannelStringCodec codec) {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.runMode(RunMode.EVENT_LOOP).channelReader(codec).channelHandler(new ChannelHandler<String>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, String message) throws IOException {
+                channelContext.write(codec.write("echo " + message));
+            }
+        });
+        return tcpServer.start();
+    }
+}
@@ -0,0 +1,101 @@
+package com.wycst.tcp.client;
+
+import io.github.wycst.wast.socket.codec.ChannelStringCodec;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.ClientChannelContext;
+import io.github.wycst.wast.socket.tcp.RunMode;
+import io.github.wycst.wast.socket.tcp.TCPClient;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Many connections on 2 client workers, each one pipelines its requests (all written before the first response is read)
+ * and checks the responses arrive in order. </p>
+ * <p> Then a connect to a closed port fails the connect future instead of blocking. </p>
+ * <p> args: [connections] [requestsPerConnection] </p>
+ *
+ * @Date 2026/10/17
+ */
+public class PipelineClientTest {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        final ChannelStringCodec codec = new ChannelStringCodec("UTF-8");
+        int port = 8106;
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.workerNum(2).runMode(RunMode.EVENT_LOOP).channelReader(codec).channelHandler(new ChannelHandler<String>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, String message) throws IOException {
+                channelContext.write(codec.write("echo " + message));
+            }
+        }).start();
+
+        TCPClient tcpClient = new TCPClient();
+        tcpClient.closeLogLevel();
+        tcpClient.workerNum(2).channelReader(codec).channelWriter(codec).connectTimeout(3, TimeUnit.SECONDS).start();
+
+        long begin = System.nanoTime();
+        List<CompletableFuture<ClientChannelContext>> connectFutures = new ArrayList<CompletableFuture<ClientChannelContext>>();
+        for (int i = 0; i < connections; ++i) {
+            connectFutures.add(tcpClient.connect("127.0.0.1", port));
+        }
+        List<ClientChannelContext> channels = new ArrayList<ClientChannelContext>();
+        for (CompletableFuture<ClientChannelContext> connectFuture : connectFutures) {
+            channels.add(connectFuture.get());
+        }
+        System.out.println(connections + " connections in " + (System.nanoTime() - begin) / 1000000 + "ms");
+
+        begin = System.nanoTime();
+        List<List<CompletableFuture<String>>> responses = new ArrayList<List<CompletableFuture<String>>>();
+        for (ClientChannelContext channel : channels) {
+            List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+            for (int j = 0; j < requests; ++j) {
+                // batched: one gathering write for the requests of the connection
+                futures.add(channel.<String>request(String.valueOf(j), j == requests - 1));
+            }
+            responses.add(futures);
+        }
+        int ok = 0, failed = 0;
+        for (List<CompletableFuture<String>> futures : responses) {
+            for (int j = 0; j < futures.size(); ++j) {
+                if (("echo " + j).equals(futures.get(j).get(10, TimeUnit.SECONDS))) {
+                    ++ok;
+                } else {
+                    ++failed;
+                }
+            }
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println("responses ok " + ok + ", out of order " + failed + ", " + ms + "ms, " + ok * 1000L / ms + " req/s");
+
+        // pending requests fail when the connection closes
+        ClientChannelContext first = channels.get(0);
+        CompletableFuture<String> pending = first.request("late", false);
+        first.close();
+        try {
+            System.out.println("request pending at close: completed " + pending.get());
+        } catch (ExecutionException e) {
+            System.out.println("request pending at close: " + e.getCause());
+        }
+
+        try {
+            tcpClient.connect("127.0.0.1", 1).get();
+            System.out.println("connect to a closed port: connected ?");
+        } catch (ExecutionException e) {
+            System.out.println("connect to a closed port: " + e.getCause());
+        }
+
+        tcpClient.shutdown();
+        tcpServer.shutdown();
+    }
+}
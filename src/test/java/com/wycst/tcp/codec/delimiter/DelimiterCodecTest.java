@@ -0,0 +1,59 @@
+package com.wycst.tcp.codec.delimiter;
+
+import io.github.wycst.wast.socket.codec.ChannelDelimiterCodec;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> CRLF-terminated lines of random lengths streamed over one connection, the server counts lines and bytes. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class DelimiterCodecTest {
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong receivedBytes = new AtomicLong();
+        TCPServer tcpServer = new TCPServer(8100);
+        tcpServer.closeLogLevel();
+        tcpServer.channelReader(new ChannelDelimiterCodec("\r\n")).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer line) throws IOException {
+                receivedBytes.addAndGet(line.remaining());
+                received.incrementAndGet();
+            }
+        }).start();
+
+        StringBuilder builder = new StringBuilder();
+        long sentBytes = 0;
+        for (int i = 0; i < lines; ++i) {
+            int n = (i * 31) % 400;
+            for (int j = 0; j < n; ++j) {
+                builder.append((char) ('a' + j % 26));
+            }
+            sentBytes += n;
+            builder.append("\r\n");
+        }
+        byte[] data = builder.toString().getBytes("UTF-8");
+        Socket socket = new Socket("127.0.0.1", 8100);
+        OutputStream os = socket.getOutputStream();
+        long begin = System.nanoTime();
+        os.write(data);
+        os.flush();
+        while (received.get() < lines && System.nanoTime() - begin < 30000000000L) {
+            Thread.sleep(1);
+        }
+        long useMillis = (System.nanoTime() - begin) / 1000000;
+        System.out.println("lines " + received.get() + "/" + lines + " bytes " + receivedBytes.get() + "/" + sentBytes + " in " + useMillis + "ms");
+        socket.close();
+        tcpServer.shutdown();
+    }
+}
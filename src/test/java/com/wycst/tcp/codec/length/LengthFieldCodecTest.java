@@ -0,0 +1,71 @@
+package com.wycst.tcp.codec.length;
+
+import io.github.wycst.wast.socket.codec.ChannelLengthFieldCodec;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Frames of random sizes (up to 64KB, little-endian 4-byte length after a 2-byte header) written in random chunks,
+ * the server checks the content of every delivered frame. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class LengthFieldCodecTest {
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final ChannelLengthFieldCodec codec = new ChannelLengthFieldCodec(1 << 20, ByteOrder.LITTLE_ENDIAN, 4, 2, 0, -1);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger corrupt = new AtomicInteger();
+        TCPServer tcpServer = new TCPServer(8099);
+        tcpServer.closeLogLevel();
+        tcpServer.channelReader(codec).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer frame) {
+                // body: n bytes of value (byte) n
+                int n = frame.remaining();
+                for (int i = 0; i < n; ++i) {
+                    if (frame.get(frame.position() + i) != (byte) n) {
+                        corrupt.incrementAndGet();
+                        break;
+                    }
+                }
+                received.incrementAndGet();
+            }
+        }).start();
+
+        Random random = new Random(1);
+        ByteBuffer stream = ByteBuffer.allocate(frames * ((64 << 10) + 6));
+        for (int i = 0; i < frames; ++i) {
+            byte[] body = new byte[random.nextInt(64 << 10)];
+            java.util.Arrays.fill(body, (byte) body.length);
+            stream.put(codec.write(ByteBuffer.wrap(body)));
+        }
+        stream.flip();
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", 8099));
+        long begin = System.nanoTime();
+        while (stream.hasRemaining()) {
+            ByteBuffer chunk = stream.duplicate();
+            chunk.limit(Math.min(stream.limit(), stream.position() + 1 + random.nextInt(100000)));
+            stream.position(chunk.limit());
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        }
+        while (received.get() < frames && System.nanoTime() - begin < 30000000000L) {
+            Thread.sleep(1);
+        }
+        System.out.println("frames " + received.get() + "/" + frames + " corrupt " + corrupt.get() + " in " + (System.nanoTime() - begin) / 1000000 + "ms");
+        channel.close();
+        tcpServer.shutdown();
+    }
+}
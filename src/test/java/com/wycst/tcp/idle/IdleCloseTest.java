@@ -0,0 +1,57 @@
+package com.wycst.tcp.idle;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.handler.IdleStateHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Idle connections closed by the idle handler: the idle tasks of a closed channel must not run again. </p>
+ * <p> Expected: one read idle trigger per connection, no trigger on a closed context. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class IdleCloseTest {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final AtomicLong triggers = new AtomicLong();
+        final AtomicLong closedTriggers = new AtomicLong();
+        TCPServer tcpServer = new TCPServer(8108);
+        tcpServer.closeLogLevel();
+        tcpServer.channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+            }
+        }).idleStateHandler(new IdleStateHandler(1, 60, TimeUnit.SECONDS) {
+            @Override
+            public void onIdleTriggered(ChannelContext ctx, IdleType idleType, long triggerTotalCount, long triggerConsecutiveCount) {
+                triggers.incrementAndGet();
+                if (ctx.isClosed()) {
+                    closedTriggers.incrementAndGet();
+                }
+                ctx.close();
+            }
+        }).start();
+
+        List<SocketChannel> channels = new ArrayList<SocketChannel>();
+        for (int i = 0; i < connections; ++i) {
+            channels.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", 8108)));
+        }
+        // several idle periods after the close
+        Thread.sleep(6000);
+        System.out.println("connections " + connections + ", idle triggers " + triggers.get() + ", triggers on closed contexts " + closedTriggers.get());
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        tcpServer.shutdown();
+    }
+}
@@ -0,0 +1,111 @@
+package com.wycst.tcp.log;
+
+import io.github.wycst.wast.socket.log.ConsoleLog;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+
+/**
+ * <p> Several threads logging the "channel close by client {}" line, with the synchronous (java.util.logging) and the async backend. </p>
+ * <p> System.out is replaced by a stream counting the bytes, the stats are printed to System.err. </p>
+ * <p> The last run uses a small ring buffer and a slow console to show the dropped records. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class AsyncLogTest {
+
+    static ConsoleLog LOG;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        PrintStream console = System.out;
+        try {
+            CountingOutputStream counter = new CountingOutputStream(0);
+            System.setOut(new PrintStream(counter, false));
+            // the java.util.logging handler keeps the System.out of its creation
+            LOG = ConsoleLog.getLog(AsyncLogTest.class);
+            run("sync ", threads, records, counter);
+            System.err.println("sync written " + counter.bytes + " bytes");
+
+            counter = new CountingOutputStream(0);
+            System.setOut(new PrintStream(counter, false));
+            ConsoleLog.enableAsync(1 << 20);
+            long begin = System.nanoTime();
+            run("async", threads, records, counter);
+            // waits for the writer
+            ConsoleLog.disableAsync();
+            System.err.println("async written " + counter.bytes + " bytes (" + counter.lines + " lines) in " + (System.nanoTime() - begin) / 1000000 + "ms");
+
+            // 1 ms per write: the ring fills up
+            counter = new CountingOutputStream(1);
+            System.setOut(new PrintStream(counter, false));
+            ConsoleLog.enableAsync(64);
+            run("slow ", threads, 1000, counter);
+            long dropped = ConsoleLog.getDroppedCount();
+            ConsoleLog.disableAsync();
+            System.err.println("slow console: dropped " + dropped + " of " + threads * 1000 + " records, written " + counter.lines + " lines");
+
+            // disabled level: no record, no formatting
+            counter = new CountingOutputStream(0);
+            System.setOut(new PrintStream(counter, false));
+            LOG.setLevel(Level.OFF);
+            run("off  ", threads, records, counter);
+            System.err.println("off written " + counter.bytes + " bytes");
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    static void run(String name, int threads, final int records, CountingOutputStream counter) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(threads);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; ++t) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; ++i) {
+                        if (LOG.isInfoEnabled()) {
+                            LOG.info("channel close by client {}", i);
+                        }
+                    }
+                    latch.countDown();
+                }
+            }, "logger-" + t).start();
+        }
+        latch.await();
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.err.println(name + ": " + threads + " threads x " + records + " records in " + ms + "ms, " + threads * (long) records * 1000 / ms + " /s (logging threads)");
+    }
+
+    static class CountingOutputStream extends OutputStream {
+        final long sleepMillis;
+        volatile long bytes;
+        volatile long lines;
+
+        CountingOutputStream(long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                }
+            }
+            for (int i = off; i < off + len; ++i) {
+                if (b[i] == '\n') ++lines;
+            }
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.wycst.tcp.metrics;
+
+import io.github.wycst.wast.socket.codec.ChannelLengthFieldCodec;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p> Echo traffic of a few clients, then prints the Prometheus text and reads the JMX attributes of the server metrics. </p>
+ * <p> The second run compares the echo throughput with the metrics disabled (hot path overhead). </p>
+ * <p> Then a frame longer than the codec limit (decode error) and a frame failing the handler (handler error): 2 read errors, 1 decode error. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class MetricsTest {
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        TCPServer tcpServer = run(8103, true, messages);
+        System.out.println(tcpServer.metrics().toPrometheusText());
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("io.github.wycst.wast.socket:type=ServerMetrics,port=8103");
+        System.out.println("jmx BytesRead " + mBeanServer.getAttribute(objectName, "BytesRead")
+                + ", ActiveConnections " + mBeanServer.getAttribute(objectName, "ActiveConnections")
+                + ", ReadTimeNanos " + mBeanServer.getAttribute(objectName, "ReadTimeNanos")
+                + ", HandlerTimeNanos " + mBeanServer.getAttribute(objectName, "HandlerTimeNanos")
+                + ", DecodeErrors " + mBeanServer.getAttribute(objectName, "DecodeErrors"));
+        tcpServer.shutdown();
+
+        run(8104, false, messages).shutdown();
+        run(8105, true, messages).shutdown();
+        errors(8112);
+    }
+
+    static void errors(int port) throws Exception {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.channelReader(new ChannelLengthFieldCodec(1024, ByteOrder.BIG_ENDIAN, 4, 0, 0, -1)).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                throw new IllegalStateException("handler failure");
+            }
+        }).start();
+        // frame of 4096 bytes: rejected by the codec
+        send(port, ByteBuffer.allocate(4).putInt(0, 4096));
+        // valid frame of 1 byte: rejected by the handler
+        send(port, ByteBuffer.allocate(5).putInt(0, 1));
+        System.out.println("read errors " + tcpServer.metrics().getReadErrors() + ", decode errors " + tcpServer.metrics().getDecodeErrors()
+                + ", handler time " + tcpServer.metrics().getHandlerTimeNanos() / 1000 + "us");
+        tcpServer.shutdown();
+    }
+
+    static void send(int port, ByteBuffer frame) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        // closed by the server after the error
+        if (channel.read(ByteBuffer.allocate(1)) >= 0) {
+            throw new IOException("not closed by the server");
+        }
+        channel.close();
+    }
+
+    static TCPServer run(int port, boolean metrics, int messages) throws Exception {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.metrics(metrics).metricsMBean(true).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                try {
+                    // the pooled read buffer itself, flushed before it is reused
+                    channelContext.write(message);
+                } catch (IOException e) {
+                    channelContext.close();
+                }
+            }
+        }).start();
+
+        // ping-pong of 64 bytes messages
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        ByteBuffer out = ByteBuffer.allocate(64);
+        ByteBuffer in = ByteBuffer.allocate(64);
+        long begin = System.nanoTime();
+        for (int i = 0; i < messages; ++i) {
+            out.clear();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            in.clear();
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException("closed");
+                }
+            }
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println("metrics " + (metrics ? "on " : "off") + ": " + messages + " round trips in " + ms + "ms, " + messages * 1000L / ms + " /s");
+        channel.close();
+        return tcpServer;
+    }
+}
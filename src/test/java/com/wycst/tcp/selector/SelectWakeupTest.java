@@ -0,0 +1,64 @@
+package com.wycst.tcp.selector;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+import io.github.wycst.wast.socket.tcp.WorkerLoad;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Slow handler (1ms per read) while the client keeps sending: counts the select() returns of the worker per message. </p>
+ * <p> OP_READ is suspended while the runner is active, so the worker is not woken up by the same readable key over and over. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class SelectWakeupTest {
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final AtomicLong received = new AtomicLong();
+        TCPServer tcpServer = new TCPServer(8098);
+        tcpServer.closeLogLevel();
+        tcpServer.channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                received.addAndGet(message.remaining());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                }
+            }
+        }).start();
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", 8098));
+        Thread.sleep(200);
+        long selectCount = selectCount(tcpServer);
+        long begin = System.nanoTime();
+        for (int i = 0; i < messages; ++i) {
+            channel.write(ByteBuffer.wrap(new byte[64]));
+            if ((i & 7) == 0) {
+                Thread.sleep(1);
+            }
+        }
+        while (received.get() < messages * 64L) {
+            Thread.sleep(1);
+        }
+        long useMillis = (System.nanoTime() - begin) / 1000000;
+        long selects = selectCount(tcpServer) - selectCount;
+        System.out.println(messages + " messages in " + useMillis + "ms, selects " + selects + ", selects/message " + (double) selects / messages);
+        channel.close();
+        tcpServer.shutdown();
+    }
+
+    static long selectCount(TCPServer tcpServer) {
+        long count = 0;
+        for (WorkerLoad workerLoad : tcpServer.getWorkerLoads()) {
+            count += workerLoad.getSelectCount();
+        }
+        return count;
+    }
+}
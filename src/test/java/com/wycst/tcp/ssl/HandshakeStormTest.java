@@ -0,0 +1,123 @@
+package com.wycst.tcp.ssl;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import javax.net.ssl.*;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Reconnect storm over TLS: client threads open connections, complete the handshake and exchange one message, measure handshakes/sec
+ * and count resumed vs full handshakes. </p>
+ * <p> args: keystore (JKS) password [clients] [connectionsPerClient] [protocol] [sessionTickets] </p>
+ * <p> sessionTickets (jvm-wide, set before the SSLContext is created): false resumes the sessions from the server cache only. </p>
+ * <p> keytool -genkeypair -alias server -keyalg RSA -keystore server.jks -storepass changeit -keypass changeit -dname CN=localhost </p>
+ *
+ * @Date 2026/10/17
+ */
+public class HandshakeStormTest {
+
+    public static void main(String[] args) throws Exception {
+        String keystore = args.length > 0 ? args[0] : "server.jks";
+        char[] password = (args.length > 1 ? args[1] : "changeit").toCharArray();
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        final int connectionsPerClient = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        String protocol = args.length > 4 ? args[4] : "TLSv1.2";
+        if (args.length > 5) {
+            TCPServer.setJvmSslSessionTickets(Boolean.parseBoolean(args[5]));
+        }
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(new FileInputStream(keystore), password);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext serverContext = SSLContext.getInstance(protocol);
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        final int port = 8095;
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.sslContext(serverContext).sslSessionCacheSize(10000).sslSessionTimeout(3600).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                // echo
+                ByteBuffer reply = ByteBuffer.allocate(message.remaining());
+                reply.put(message);
+                reply.flip();
+                try {
+                    channelContext.write(reply);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).start();
+
+        // test certificate, trust all
+        final SSLContext clientContext = SSLContext.getInstance(protocol);
+        clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(clients);
+        long begin = System.nanoTime();
+        for (int i = 0; i < clients; ++i) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < connectionsPerClient; ++j) {
+                            try {
+                                SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("127.0.0.1", port);
+                                socket.setSoTimeout(10000);
+                                OutputStream out = socket.getOutputStream();
+                                out.write("ping".getBytes());
+                                out.flush();
+                                InputStream in = socket.getInputStream();
+                                byte[] buf = new byte[4];
+                                int n = 0, r;
+                                while (n < 4 && (r = in.read(buf, n, 4 - n)) > 0) {
+                                    n += r;
+                                }
+                                if ("ping".equals(new String(buf, 0, n))) {
+                                    succeeded.incrementAndGet();
+                                } else {
+                                    failed.incrementAndGet();
+                                }
+                                socket.close();
+                            } catch (IOException e) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println(protocol + " handshakes " + succeeded + ", failed " + failed + ", " + ms + "ms, " + succeeded.get() * 1000L / ms + " handshakes/s");
+        // the clients share clientContext, reconnections resume their session
+        System.out.println("full " + tcpServer.config().getFullHandshakes() + ", resumed " + tcpServer.config().getResumedHandshakes());
+        tcpServer.shutdown();
+    }
+}
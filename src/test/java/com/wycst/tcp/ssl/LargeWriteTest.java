@@ -0,0 +1,96 @@
+package com.wycst.tcp.ssl;
+
+import io.github.wycst.wast.socket.buffer.PooledByteBufferAllocator;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import javax.net.ssl.*;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+/**
+ * <p> Writes much larger than a TLS record: each write is wrapped into many records (pooled direct buffers) sent by one gathering flush. </p>
+ * <p> With cryptoThreads > 0 the records are encrypted on the crypto pool (TCPServer.sslCryptoOffload) while the handler keeps writing. </p>
+ * <p> args: keystore (JKS) password [writeSize] [writes] [cryptoThreads] </p>
+ *
+ * @Date 2026/10/17
+ */
+public class LargeWriteTest {
+
+    public static void main(String[] args) throws Exception {
+        String keystore = args.length > 0 ? args[0] : "server.jks";
+        char[] password = (args.length > 1 ? args[1] : "changeit").toCharArray();
+        final int writeSize = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 20;
+        final int writes = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        int cryptoThreads = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(new FileInputStream(keystore), password);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        final byte[] payload = new byte[writeSize];
+        for (int i = 0; i < writeSize; ++i) {
+            payload[i] = (byte) (i * 31);
+        }
+        int port = 8096;
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.config().setBufferAllocator(PooledByteBufferAllocator.DEFAULT_DIRECT);
+        tcpServer.sslContext(serverContext).sslCryptoOffload(cryptoThreads).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) {
+                try {
+                    for (int i = 0; i < writes; ++i) {
+                        channelContext.writeAndFlush(ByteBuffer.wrap(payload));
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).start();
+
+        // test certificate, trust all
+        SSLContext clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("127.0.0.1", port);
+        socket.getOutputStream().write(1);
+        socket.getOutputStream().flush();
+
+        long begin = System.nanoTime();
+        InputStream in = socket.getInputStream();
+        byte[] buf = new byte[65536];
+        long received = 0, total = (long) writeSize * writes;
+        boolean ok = true;
+        int n;
+        while (received < total && (n = in.read(buf)) > 0) {
+            for (int i = 0; i < n; ++i) {
+                if (buf[i] != payload[(int) ((received + i) % writeSize)]) {
+                    ok = false;
+                }
+            }
+            received += n;
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println("received " + received + "/" + total + " ok=" + ok + ", " + ms + "ms, " + received * 1000 / ms / 1048576 + " MB/s");
+        socket.close();
+        tcpServer.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+package com.wycst.tcp.ssl;
+
+import io.github.wycst.wast.socket.buffer.PooledByteBufferAllocator;
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+/**
+ * <p> sendFile over TLS: a header written with write(), a large file, then a trailer written with write() after the file. </p>
+ * <p> The file is wrapped chunk by chunk as the client reads: the direct memory used right after sendFile returns (client not reading yet)
+ * stays around one wrap buffer instead of the whole file. The client checks the order and the content of the received bytes. </p>
+ * <p> args: keystore (JKS) password [fileSize] [cryptoThreads] </p>
+ *
+ * @Date 2026/10/17
+ */
+public class SSLSendFileTest {
+
+    static final byte[] HEADER = "FILE".getBytes();
+    static final byte[] TRAILER = "DONE".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        String keystore = args.length > 0 ? args[0] : "server.jks";
+        char[] password = (args.length > 1 ? args[1] : "changeit").toCharArray();
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 256 << 20;
+        int cryptoThreads = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        File file = File.createTempFile("wast-sendfile", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        byte[] block = new byte[1 << 16];
+        for (int i = 0; i < block.length; ++i) {
+            block[i] = (byte) i;
+        }
+        for (int written = 0; written < size; written += block.length) {
+            randomAccessFile.write(block, 0, Math.min(block.length, size - written));
+        }
+        final FileChannel fileChannel = randomAccessFile.getChannel();
+        final long fileSize = fileChannel.size();
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(new FileInputStream(keystore), password);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        final BufferPoolMXBean direct = directPool();
+        int port = 8111;
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.config().setBufferAllocator(PooledByteBufferAllocator.DEFAULT_DIRECT);
+        tcpServer.sslContext(serverContext).sslCryptoOffload(cryptoThreads).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) throws IOException {
+                long before = direct.getMemoryUsed();
+                channelContext.write(ByteBuffer.wrap(HEADER));
+                channelContext.sendFile(fileChannel, 0, fileSize);
+                channelContext.writeAndFlush(ByteBuffer.wrap(TRAILER));
+                System.out.println("direct memory held by sendFile: " + ((direct.getMemoryUsed() - before) >> 10) + "KB");
+            }
+        }).start();
+
+        // test certificate, trust all
+        SSLContext clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("127.0.0.1", port);
+        socket.getOutputStream().write(1);
+        socket.getOutputStream().flush();
+        InputStream in = socket.getInputStream();
+        // the server socket send buffer fills up before the client reads
+        Thread.sleep(500);
+
+        long begin = System.nanoTime();
+        byte[] buf = new byte[65536];
+        long received = 0, total = HEADER.length + fileSize + TRAILER.length;
+        boolean ok = true;
+        int n;
+        while (received < total && (n = in.read(buf)) > 0) {
+            for (int i = 0; i < n; ++i) {
+                if (buf[i] != expected(received + i, fileSize)) {
+                    ok = false;
+                }
+            }
+            received += n;
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000000, 1);
+        System.out.println("received " + received + "/" + total + " ok=" + ok + ", " + ms + "ms, " + received * 1000 / ms / 1048576 + " MB/s");
+        socket.close();
+        tcpServer.shutdown();
+        fileChannel.close();
+    }
+
+    static byte expected(long index, long fileSize) {
+        if (index < HEADER.length) {
+            return HEADER[(int) index];
+        }
+        index -= HEADER.length;
+        if (index < fileSize) {
+            return (byte) index;
+        }
+        return TRAILER[(int) (index - fileSize)];
+    }
+
+    static BufferPoolMXBean directPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        throw new IllegalStateException("no direct buffer pool");
+    }
+}
@@ -0,0 +1,125 @@
+package com.wycst.tcp.write;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.RunMode;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Echo of the pooled read buffer itself (ctx.write(message) with ChannelReader.UNDO) by several clients sending different bytes at once,
+ * the clients read slowly at first so that the socket does not accept everything (the unsent bytes must be copied before the buffer is reused). </p>
+ * <p> Then a timer task pushes a message with write() outside of the handler: it must be sent without flush(). </p>
+ *
+ * @Date 2026/10/17
+ */
+public class EchoIntegrityTest {
+
+    static final byte[] PUSH = "PUSH".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int bytes = args.length > 1 ? Integer.parseInt(args[1]) : 8 << 20;
+        for (RunMode runMode : new RunMode[]{RunMode.EVENT_LOOP, RunMode.EXECUTOR}) {
+            run(runMode, clients, bytes);
+        }
+    }
+
+    static void run(RunMode runMode, int clients, final int bytes) throws Exception {
+        TCPServer tcpServer = new TCPServer(8109);
+        tcpServer.closeLogLevel();
+        tcpServer.runMode(runMode).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(final ChannelContext channelContext, ByteBuffer message) throws IOException {
+                if (message.remaining() == 1 && message.get(message.position()) == 'P') {
+                    // push from the timer thread, no flush
+                    channelContext.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                channelContext.write(ByteBuffer.wrap(PUSH));
+                            } catch (IOException e) {
+                                channelContext.close();
+                            }
+                        }
+                    }, 10, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                channelContext.write(message);
+            }
+        }).start();
+
+        final AtomicLong errors = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        long begin = System.nanoTime();
+        for (int c = 0; c < clients; ++c) {
+            final byte seed = (byte) (c * 31 + 7);
+            threads[c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        echo(seed, bytes);
+                    } catch (Throwable throwable) {
+                        throwable.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long ms = (System.nanoTime() - begin) / 1000000;
+        System.out.println(runMode + ": " + clients + " clients x " + (bytes >> 20) + "MB echoed in " + ms + "ms, " + (errors.get() == 0 ? "all bytes match, pushes received" : errors.get() + " errors"));
+        tcpServer.shutdown();
+    }
+
+    static void echo(byte seed, int bytes) throws Exception {
+        final Socket socket = new Socket("127.0.0.1", 8109);
+        socket.setSoTimeout(10000);
+        final byte[] sent = new byte[bytes];
+        for (int i = 0; i < bytes; ++i) {
+            sent[i] = (byte) (seed + i * 13 + (i >> 10));
+        }
+        final OutputStream out = socket.getOutputStream();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int off = 0; off < sent.length; off += 4096) {
+                        out.write(sent, off, Math.min(4096, sent.length - off));
+                    }
+                } catch (IOException e) {
+                }
+            }
+        });
+        writer.start();
+        // the server send buffer fills up before the client reads
+        Thread.sleep(300);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] received = new byte[bytes];
+        in.readFully(received);
+        writer.join();
+        if (!Arrays.equals(sent, received)) {
+            int i = 0;
+            while (sent[i] == received[i]) ++i;
+            throw new IOException("echo differs at " + i);
+        }
+        out.write('P');
+        byte[] push = new byte[PUSH.length];
+        in.readFully(push);
+        if (!Arrays.equals(PUSH, push)) {
+            throw new IOException("unexpected push " + new String(push));
+        }
+        socket.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.wycst.tcp.write;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.RunMode;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Responses made of header + body + trailer: one flush per part (3 write syscalls per message) vs write + write + write
+ * with the automatic flush at the end of the read (one gathering writev for all the responses of a read). </p>
+ * <p> Write syscalls per message are counted by the server metrics (also observable with: strace -f -c -e trace=write,writev java ...). </p>
+ *
+ * @Date 2026/10/17
+ */
+public class GatheringWriteTest {
+
+    static final byte[] HEADER = "HEAD".getBytes();
+    static final byte[] BODY = "0123456789abcdef0123456789abcdef".getBytes();
+    static final byte[] TRAILER = "TAIL".getBytes();
+    static final int RESPONSE_SIZE = HEADER.length + BODY.length + TRAILER.length;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int messages = 200000;
+        for (int i = 0; i < 3; ++i) {
+            run(8091, true, messages);
+            run(8092, false, messages);
+        }
+    }
+
+    static void run(int port, final boolean flushEachPart, int messages) throws IOException, InterruptedException {
+        TCPServer tcpServer = new TCPServer(port);
+        tcpServer.closeLogLevel();
+        tcpServer.runMode(RunMode.EVENT_LOOP).metrics(true).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) throws IOException {
+                // 8 bytes per request
+                int requests = message.remaining() >> 3;
+                for (int i = 0; i < requests; ++i) {
+                    if (flushEachPart) {
+                        channelContext.writeAndFlush(ByteBuffer.wrap(HEADER));
+                        channelContext.writeAndFlush(ByteBuffer.wrap(BODY));
+                        channelContext.writeAndFlush(ByteBuffer.wrap(TRAILER));
+                    } else {
+                        channelContext.write(ByteBuffer.wrap(HEADER));
+                        channelContext.write(ByteBuffer.wrap(BODY));
+                        channelContext.write(ByteBuffer.wrap(TRAILER));
+                    }
+                }
+            }
+        }).start();
+
+        final Socket socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        final OutputStream out = socket.getOutputStream();
+        final int total = messages;
+        long begin = System.nanoTime();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] request = new byte[8 * 64];
+                    for (int i = 0; i < total / 64; ++i) {
+                        out.write(request);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        writer.start();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[RESPONSE_SIZE * 64];
+        for (int i = 0; i < total / 64; ++i) {
+            in.readFully(response);
+        }
+        long useMillis = (System.nanoTime() - begin) / 1000000;
+        int count = total / 64 * 64;
+        System.out.println((flushEachPart ? "flush each part " : "gathering write ") + count + " messages in " + useMillis + "ms, "
+                + (double) tcpServer.metrics().getWrites() / count + " write syscalls per message");
+        socket.close();
+        tcpServer.shutdown();
+    }
+}
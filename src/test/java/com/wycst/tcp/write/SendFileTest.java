@@ -0,0 +1,73 @@
+package com.wycst.tcp.write;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p> Each connection gets a header written with write() followed by a 64MB file sent with sendFile (transferTo). </p>
+ * <p> The client checks the order and the content of the received bytes. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class SendFileTest {
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 64 << 20;
+        File file = File.createTempFile("wast-sendfile", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        byte[] block = new byte[1 << 16];
+        for (int i = 0; i < block.length; ++i) {
+            block[i] = (byte) i;
+        }
+        for (int written = 0; written < size; written += block.length) {
+            randomAccessFile.write(block, 0, Math.min(block.length, size - written));
+        }
+        final FileChannel fileChannel = randomAccessFile.getChannel();
+        final long fileSize = fileChannel.size();
+
+        TCPServer tcpServer = new TCPServer(8101);
+        tcpServer.closeLogLevel();
+        tcpServer.channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) throws IOException {
+                channelContext.write(ByteBuffer.wrap("FILE".getBytes()));
+                channelContext.sendFile(fileChannel, 0, fileSize);
+            }
+        }).start();
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", 8101));
+        long begin = System.nanoTime();
+        channel.write(ByteBuffer.wrap(new byte[]{1}));
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        long received = 0, total = fileSize + 4;
+        boolean ok = true;
+        while (received < total) {
+            buf.clear();
+            int n = channel.read(buf);
+            if (n == -1) break;
+            for (int i = 0; i < n; ++i) {
+                long index = received + i;
+                byte expected = index < 4 ? (byte) "FILE".charAt((int) index) : (byte) (index - 4);
+                if (buf.get(i) != expected) {
+                    ok = false;
+                }
+            }
+            received += n;
+        }
+        long useMillis = (System.nanoTime() - begin) / 1000000;
+        System.out.println("received " + received + "/" + total + " ok=" + ok + " in " + useMillis + "ms");
+        channel.close();
+        tcpServer.shutdown();
+        fileChannel.close();
+    }
+}
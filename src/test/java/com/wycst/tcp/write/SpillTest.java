@@ -0,0 +1,68 @@
+package com.wycst.tcp.write;
+
+import io.github.wycst.wast.socket.handler.ChannelHandler;
+import io.github.wycst.wast.socket.tcp.ChannelContext;
+import io.github.wycst.wast.socket.tcp.TCPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p> Slow consumer with spill to disk: the handler queues 256MB at once for a client which reads nothing yet,
+ * everything beyond 4MB goes to mapped segments instead of the heap, then the client drains and checks the bytes. </p>
+ *
+ * @Date 2026/10/17
+ */
+public class SpillTest {
+
+    public static void main(String[] args) throws Exception {
+        final int chunks = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        final int chunkSize = 64 << 10;
+        final TCPServer tcpServer = new TCPServer(8102);
+        tcpServer.closeLogLevel();
+        tcpServer.spillThreshold(4 << 20).channelHandler(new ChannelHandler<ByteBuffer>() {
+            @Override
+            public void onHandle(ChannelContext channelContext, ByteBuffer message) throws IOException {
+                long begin = System.nanoTime();
+                for (int i = 0; i < chunks; ++i) {
+                    ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+                    for (int j = 0; j < chunkSize; j += 8) {
+                        chunk.putLong(j, (long) i * chunkSize + j);
+                    }
+                    channelContext.write(chunk);
+                }
+                channelContext.flush();
+                System.out.println("queued " + (long) chunks * chunkSize + " bytes in " + (System.nanoTime() - begin) / 1000000 + "ms, pending " + channelContext.getPendingWriteBytes()
+                        + ", mapped " + tcpServer.config().getSpilledBytes());
+            }
+        }).start();
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", 8102));
+        channel.write(ByteBuffer.wrap(new byte[]{1}));
+        Thread.sleep(2000);
+        ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+        long received = 0, total = (long) chunks * chunkSize;
+        boolean ok = true;
+        while (received < total) {
+            int n = channel.read(buf);
+            if (n == -1) break;
+            received += n;
+            if (!buf.hasRemaining()) {
+                buf.flip();
+                long base = received - chunkSize;
+                for (int j = 0; j < chunkSize; j += 8) {
+                    if (buf.getLong(j) != base + j) {
+                        ok = false;
+                    }
+                }
+                buf.clear();
+            }
+        }
+        Thread.sleep(100);
+        System.out.println("received " + received + "/" + total + " ok=" + ok + ", mapped after drain " + tcpServer.config().getSpilledBytes());
+        channel.close();
+        tcpServer.shutdown();
+    }
+}